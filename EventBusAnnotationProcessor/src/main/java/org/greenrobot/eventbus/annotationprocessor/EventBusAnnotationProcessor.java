@@ -0,0 +1,398 @@
+package org.greenrobot.eventbus.annotationprocessor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * 编译期扫描所有@Subscribe订阅函数,生成实现SubscriberInfoIndex的索引类.
+ * 索引类中为每个订阅函数生成直接调用的SubscriberInvoker,运行时既不需要getDeclaredMethods遍历,
+ * 也不需要Method.invoke反射调用.
+ * 通过编译参数eventBusIndex指定索引类的全限定名.
+ */
+@SupportedAnnotationTypes("org.greenrobot.eventbus.Subscribe")
+@SupportedOptions(EventBusAnnotationProcessor.OPTION_EVENT_BUS_INDEX)
+public class EventBusAnnotationProcessor extends AbstractProcessor {
+    public static final String OPTION_EVENT_BUS_INDEX = "eventBusIndex";
+
+    private static final String SUBSCRIBE_ANNOTATION = "org.greenrobot.eventbus.Subscribe";
+
+    /** Map<订阅者类, 该类中声明的订阅函数集合>,保持源码中的声明顺序. */
+    private final Map<TypeElement, List<ExecutableElement>> methodsByClass = new LinkedHashMap<>();
+
+    /** 不能从索引类中访问的订阅者类,运行时由反射处理. */
+    private final Set<TypeElement> classesToSkip = new HashSet<>();
+
+    private boolean writerRoundDone;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latest();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment env) {
+        Messager messager = processingEnv.getMessager();
+        if (annotations.isEmpty()) {
+            return false;
+        }
+        String index = processingEnv.getOptions().get(OPTION_EVENT_BUS_INDEX);
+        if (index == null) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "No option " + OPTION_EVENT_BUS_INDEX +
+                    " passed to annotation processor");
+            return false;
+        }
+        if (writerRoundDone) {
+            messager.printMessage(Diagnostic.Kind.ERROR,
+                    "Unexpected processing state: annotations still available after writing.");
+            return false;
+        }
+
+        collectSubscribers(annotations, env, messager);
+        String indexPackage = getPackageName(index);
+        checkForSubscribersToSkip(indexPackage, messager);
+
+        if (!methodsByClass.isEmpty()) {
+            writeIndex(index, indexPackage, messager);
+        } else {
+            messager.printMessage(Diagnostic.Kind.WARNING, "No @Subscribe annotations found");
+        }
+        writerRoundDone = true;
+        return true;
+    }
+
+    private void collectSubscribers(Set<? extends TypeElement> annotations, RoundEnvironment env,
+                                    Messager messager) {
+        for (TypeElement annotation : annotations) {
+            Set<? extends Element> elements = env.getElementsAnnotatedWith(annotation);
+            for (Element element : elements) {
+                if (element instanceof ExecutableElement) {
+                    ExecutableElement method = (ExecutableElement) element;
+                    if (checkHasNoErrors(method, messager)) {
+                        TypeElement classElement = (TypeElement) method.getEnclosingElement();
+                        List<ExecutableElement> methods = methodsByClass.get(classElement);
+                        if (methods == null) {
+                            methods = new ArrayList<>();
+                            methodsByClass.put(classElement, methods);
+                        }
+                        methods.add(method);
+                    }
+                } else {
+                    messager.printMessage(Diagnostic.Kind.ERROR,
+                            "@Subscribe is only valid for methods", element);
+                }
+            }
+        }
+    }
+
+    /** 与运行时反射的校验规则保持一致:public,非static,只有一个参数. */
+    private boolean checkHasNoErrors(ExecutableElement element, Messager messager) {
+        if (element.getModifiers().contains(Modifier.STATIC)) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Subscriber method must not be static",
+                    element);
+            return false;
+        }
+        if (!element.getModifiers().contains(Modifier.PUBLIC)) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Subscriber method must be public",
+                    element);
+            return false;
+        }
+        if (element.getParameters().size() != 1) {
+            messager.printMessage(Diagnostic.Kind.ERROR,
+                    "Subscriber method must have exactly 1 parameter", element);
+            return false;
+        }
+        return true;
+    }
+
+    /** 订阅者类或者事件类型无法在索引类中访问时,整个类交给运行时反射处理. */
+    private void checkForSubscribersToSkip(String indexPackage, Messager messager) {
+        for (Map.Entry<TypeElement, List<ExecutableElement>> entry : methodsByClass.entrySet()) {
+            TypeElement subscriberClass = entry.getKey();
+            if (!isVisible(indexPackage, subscriberClass)) {
+                classesToSkip.add(subscriberClass);
+                messager.printMessage(Diagnostic.Kind.NOTE, "Falling back to reflection because " +
+                        "class is not visible to the index: " + subscriberClass.getQualifiedName());
+                continue;
+            }
+            for (ExecutableElement method : entry.getValue()) {
+                TypeMirror eventType = method.getParameters().get(0).asType();
+                if (eventType.getKind() != TypeKind.DECLARED ||
+                        !isVisible(indexPackage, (TypeElement) ((DeclaredType) eventType).asElement())) {
+                    classesToSkip.add(subscriberClass);
+                    messager.printMessage(Diagnostic.Kind.NOTE, "Falling back to reflection " +
+                            "because event type is not visible to the index: " + eventType, method);
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean isVisible(String indexPackage, TypeElement typeElement) {
+        Element element = typeElement;
+        while (element instanceof TypeElement) {
+            TypeElement type = (TypeElement) element;
+            if (type.getNestingKind().isNested() && type.getEnclosingElement().getKind() ==
+                    ElementKind.METHOD) {
+                return false;
+            }
+            Set<Modifier> modifiers = type.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            if (!modifiers.contains(Modifier.PUBLIC) &&
+                    !indexPackage.equals(getPackageElement(type).getQualifiedName().toString())) {
+                return false;
+            }
+            if (type.getQualifiedName().length() == 0) {
+                return false;
+            }
+            element = type.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private PackageElement getPackageElement(TypeElement type) {
+        Element element = type;
+        while (!(element instanceof PackageElement)) {
+            element = element.getEnclosingElement();
+        }
+        return (PackageElement) element;
+    }
+
+    private static String getPackageName(String className) {
+        int period = className.lastIndexOf('.');
+        return period > 0 ? className.substring(0, period) : "";
+    }
+
+    private String getClassLiteralName(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private TypeElement getSuperclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() == TypeKind.DECLARED) {
+            TypeElement superclassElement = (TypeElement) processingEnv.getTypeUtils()
+                    .asElement(superclass);
+            String name = superclassElement.getQualifiedName().toString();
+            if (name.startsWith("java.") || name.startsWith("javax.") ||
+                    name.startsWith("android.")) {
+                return null;
+            }
+            return superclassElement;
+        }
+        return null;
+    }
+
+    private void writeIndex(String index, String indexPackage, Messager messager) {
+        String className = index.substring(index.lastIndexOf('.') + 1);
+        BufferedWriter writer = null;
+        try {
+            JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(index);
+            writer = new BufferedWriter(sourceFile.openWriter());
+            if (!indexPackage.isEmpty()) {
+                writer.write("package " + indexPackage + ";\n\n");
+            }
+            writer.write("import org.greenrobot.eventbus.SubscriberInvoker;\n");
+            writer.write("import org.greenrobot.eventbus.ThreadMode;\n");
+            writer.write("import org.greenrobot.eventbus.meta.SimpleSubscriberInfo;\n");
+            writer.write("import org.greenrobot.eventbus.meta.SubscriberInfo;\n");
+            writer.write("import org.greenrobot.eventbus.meta.SubscriberInfoIndex;\n");
+            writer.write("import org.greenrobot.eventbus.meta.SubscriberMethodInfo;\n\n");
+            writer.write("import java.lang.reflect.InvocationTargetException;\n");
+            writer.write("import java.util.HashMap;\n");
+            writer.write("import java.util.Map;\n\n");
+            writer.write("/** This class is generated by EventBus, do not edit. */\n");
+            writer.write("public class " + className + " implements SubscriberInfoIndex {\n");
+            writer.write("    private static final Map<Class<?>, SubscriberInfo> SUBSCRIBER_INDEX;\n\n");
+            writer.write("    static {\n");
+            writer.write("        SUBSCRIBER_INDEX = new HashMap<Class<?>, SubscriberInfo>();\n");
+
+            List<String> invokerCalls = new ArrayList<>();
+            Map<TypeElement, String> infoVariables = new HashMap<>();
+            for (TypeElement subscriberClass : methodsByClass.keySet()) {
+                writeSubscriberInfo(writer, subscriberClass, infoVariables, invokerCalls);
+            }
+
+            writer.write("    }\n\n");
+            writer.write("    private static void putIndex(SubscriberInfo info) {\n");
+            writer.write("        SUBSCRIBER_INDEX.put(info.getSubscriberClass(), info);\n");
+            writer.write("    }\n\n");
+            writer.write("    @Override\n");
+            writer.write("    public SubscriberInfo getSubscriberInfo(Class<?> subscriberClass) {\n");
+            writer.write("        return SUBSCRIBER_INDEX.get(subscriberClass);\n");
+            writer.write("    }\n\n");
+            writeInvoker(writer, invokerCalls);
+            writer.write("}\n");
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write source for " + index, e);
+        } finally {
+            closeQuietly(writer);
+        }
+        messager.printMessage(Diagnostic.Kind.NOTE, "Wrote EventBus index " + index + " with " +
+                (methodsByClass.size() - classesToSkip.size()) + " subscriber classes");
+    }
+
+    /** 先写父类的订阅者信息,以便子类通过getSuperSubscriberInfo直接引用. */
+    private String writeSubscriberInfo(Writer writer, TypeElement subscriberClass,
+                                       Map<TypeElement, String> infoVariables,
+                                       List<String> invokerCalls) throws IOException {
+        if (infoVariables.containsKey(subscriberClass)) {
+            return infoVariables.get(subscriberClass);
+        }
+        TypeElement superclass = getSuperclass(subscriberClass);
+        String superInfo = "null";
+        if (superclass != null && methodsByClass.containsKey(superclass) &&
+                !classesToSkip.contains(superclass)) {
+            superInfo = writeSubscriberInfo(writer, superclass, infoVariables, invokerCalls);
+        }
+        if (classesToSkip.contains(subscriberClass)) {
+            infoVariables.put(subscriberClass, "null");
+            return "null";
+        }
+
+        boolean shouldCheckSuperclass = superclass != null && hasSubscribersInHierarchy(superclass);
+        String variable = "info" + infoVariables.size();
+        infoVariables.put(subscriberClass, variable);
+        String subscriberType = getClassLiteralName(subscriberClass.asType());
+        writer.write("\n        SubscriberInfo " + variable + " = new SimpleSubscriberInfo(" +
+                subscriberType + ".class, " + superInfo + ", " + shouldCheckSuperclass +
+                ", new SubscriberMethodInfo[] {\n");
+        for (ExecutableElement method : methodsByClass.get(subscriberClass)) {
+            String eventType = getClassLiteralName(method.getParameters().get(0).asType());
+            String methodName = method.getSimpleName().toString();
+            int invokerId = invokerCalls.size();
+            invokerCalls.add("((" + subscriberType + ") subscriber)." + methodName + "((" +
+                    eventType + ") event);");
+
+            String threadMode = "POSTING";
+            boolean sticky = false;
+            boolean conflate = false;
+            int priority = 0;
+            AnnotationMirror subscribe = getSubscribeAnnotation(method);
+            Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                    processingEnv.getElementUtils().getElementValuesWithDefaults(subscribe);
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value :
+                    values.entrySet()) {
+                String name = value.getKey().getSimpleName().toString();
+                Object content = value.getValue().getValue();
+                if ("threadMode".equals(name)) {
+                    threadMode = ((VariableElement) content).getSimpleName().toString();
+                } else if ("sticky".equals(name)) {
+                    sticky = (Boolean) content;
+                } else if ("priority".equals(name)) {
+                    priority = (Integer) content;
+                } else if ("conflate".equals(name)) {
+                    conflate = (Boolean) content;
+                }
+            }
+            writer.write("            new SubscriberMethodInfo(\"" + methodName + "\", " + eventType +
+                    ".class, ThreadMode." + threadMode + ", " + priority + ", " + sticky + ", " +
+                    conflate + ", new Invoker(" + invokerId + ")),\n");
+        }
+        writer.write("        });\n");
+        writer.write("        putIndex(" + variable + ");\n");
+        return variable;
+    }
+
+    /** 父类链上(包括依赖库中的父类)没有订阅函数时,运行时无需再检查父类. */
+    private boolean hasSubscribersInHierarchy(TypeElement type) {
+        while (type != null) {
+            if (methodsByClass.containsKey(type)) {
+                return true;
+            }
+            for (Element element : type.getEnclosedElements()) {
+                if (element.getKind() == ElementKind.METHOD &&
+                        findSubscribeAnnotation((ExecutableElement) element) != null) {
+                    return true;
+                }
+            }
+            type = getSuperclass(type);
+        }
+        return false;
+    }
+
+    private AnnotationMirror getSubscribeAnnotation(ExecutableElement method) {
+        AnnotationMirror mirror = findSubscribeAnnotation(method);
+        if (mirror == null) {
+            throw new IllegalStateException("No @Subscribe annotation on " + method);
+        }
+        return mirror;
+    }
+
+    private AnnotationMirror findSubscribeAnnotation(ExecutableElement method) {
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+            if (SUBSCRIBE_ANNOTATION.contentEquals(type.getQualifiedName())) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    /** 所有订阅函数共用一个调用器类,通过编号分派,避免为每个订阅函数生成一个类. */
+    private void writeInvoker(Writer writer, List<String> invokerCalls) throws IOException {
+        writer.write("    private static final class Invoker implements SubscriberInvoker {\n");
+        writer.write("        private final int id;\n\n");
+        writer.write("        Invoker(int id) {\n");
+        writer.write("            this.id = id;\n");
+        writer.write("        }\n\n");
+        writer.write("        @Override\n");
+        writer.write("        public void invoke(Object subscriber, Object event)\n");
+        writer.write("                throws InvocationTargetException {\n");
+        writer.write("            try {\n");
+        writer.write("                switch (id) {\n");
+        for (int i = 0; i < invokerCalls.size(); i ++) {
+            writer.write("                    case " + i + ":\n");
+            writer.write("                        " + invokerCalls.get(i) + "\n");
+            writer.write("                        return;\n");
+        }
+        writer.write("                    default:\n");
+        writer.write("                        break;\n");
+        writer.write("                }\n");
+        writer.write("            } catch (Throwable throwable) {\n");
+        writer.write("                throw new InvocationTargetException(throwable);\n");
+        writer.write("            }\n");
+        writer.write("            throw new IllegalStateException(\"Unknown subscriber method: \" + id);\n");
+        writer.write("        }\n");
+        writer.write("    }\n");
+    }
+
+    private static void closeQuietly(Writer writer) {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // silent
+            }
+        }
+    }
+}
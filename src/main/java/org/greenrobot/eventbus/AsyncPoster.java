@@ -1,29 +1,180 @@
 package org.greenrobot.eventbus;
 
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * 将订阅事件在后台响应执行,并且执行顺序是并发执行.
+ * 每个线程池任务是一个消费循环,一次唤醒可以连续执行多个PendingPost,直到队列为空才退出.
+ * 同时运行的消费任务数量不超过maxWorkers,入队时积压的数量多于空闲的消费任务就启动新的消费任务,
+ * 正在执行响应函数的消费任务不算空闲,因此未达上限时事件不会等待其他ASYNC响应函数返回.
  */
 class AsyncPoster implements Runnable{
     private final PendingPostQueue queue;
     private final EventBus eventBus;
 
-    AsyncPoster(EventBus eventBus) {
+    /** 同时运行的消费任务数量上限. */
+    private final int maxWorkers;
+
+    /** 正在运行的消费任务数量. */
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+
+    /**
+     * 空闲的消费任务数量:已启动但还没有领取PendingPost的消费任务.
+     * 消费任务在出队之前就减少该数量,执行完响应函数后再增加,保证执行响应函数期间不被当作空闲.
+     */
+    private final AtomicInteger idleWorkers = new AtomicInteger();
+
+    /** 队列没有容量限制时由这里统计积压的PendingPost数量,有容量限制时直接使用队列的统计. */
+    private final AtomicInteger queued;
+
+    /** 队列统计,未开启统计时为null. */
+    private final PosterMetrics metrics;
+
+    AsyncPoster(EventBus eventBus, PendingPostQueue queue, int maxWorkers, PosterMetrics metrics) {
         this.eventBus = eventBus;
-        queue = new PendingPostQueue();
+        this.metrics = metrics;
+        this.queue = queue;
+        this.maxWorkers = maxWorkers;
+        queued = queue.size() < 0 ? new AtomicInteger() : null;
+        if (metrics != null) {
+            metrics.track(queue);
+        }
     }
 
-    public void enqueue(Subscription subscription, Object event) {
-        PendingPost pendingPost = PendingPost.obtainPendingPost(subscription, event);
-        queue.enqueue(pendingPost);
-        eventBus.getExecutorService().execute(this);
+    /** @return 队列已满且按溢出策略拒绝时返回false. */
+    public boolean enqueue(Subscription subscription, Object event, boolean nonBlocking) {
+        PendingPost pendingPost = eventBus.getPendingPostPool().obtain(subscription, event);
+        if (!queue.enqueue(pendingPost, nonBlocking)) {
+            return false;
+        }
+        if (queued != null) {
+            queued.incrementAndGet();
+        }
+        if (metrics != null) {
+            metrics.onEnqueued(1);
+        }
+        startWorkersIfNeeded();
+        return true;
+    }
+
+    /** 将一批PendingPost入队,没有容量限制时整体入队,再按积压数量一次性启动所需的消费任务. */
+    void enqueueAll(PendingPost first, PendingPost last, int count) {
+        if (queue.size() >= 0) {
+            enqueueEach(first, last);
+            return;
+        }
+        queue.enqueueAll(first, last);
+        if (queued != null) {
+            queued.addAndGet(count);
+        }
+        if (metrics != null) {
+            metrics.onEnqueued(count);
+        }
+        startWorkersIfNeeded();
+    }
+
+    /** 有容量限制时逐个入队并启动消费任务,见BackgroundPoster.enqueueEach. */
+    private void enqueueEach(PendingPost first, PendingPost last) {
+        PendingPost pendingPost = first;
+        try {
+            while (pendingPost != null) {
+                PendingPost current = pendingPost;
+                pendingPost = current == last ? null : current.next;
+                if (queue.enqueue(current, false)) {
+                    if (metrics != null) {
+                        metrics.onEnqueued(1);
+                    }
+                    startWorkersIfNeeded();
+                }
+            }
+        } finally {
+            if (pendingPost != null) {
+                eventBus.getPendingPostPool().discardAll(pendingPost, last);
+            }
+        }
+    }
+
+    private int backlog() {
+        return queued != null ? queued.get() : queue.size();
+    }
+
+    /**
+     * 积压的PendingPost多于空闲的消费任务时启动新的消费任务,直到达到上限.
+     * 入队之后再读取空闲数量,与run()中先减少空闲数量再出队配合,每个积压的PendingPost都有一个
+     * 空闲的消费任务会领取它;与run()中先减少运行数量再检查队列配合,达到上限时也不会遗漏入队的事件.
+     */
+    private void startWorkersIfNeeded() {
+        while (true) {
+            int workers = activeWorkers.get();
+            if (workers >= maxWorkers || backlog() <= idleWorkers.get()) {
+                return;
+            }
+            if (activeWorkers.compareAndSet(workers, workers + 1)) {
+                idleWorkers.incrementAndGet();
+                if (metrics != null) {
+                    metrics.onScheduled();
+                }
+                try {
+                    eventBus.getAsyncExecutorService().execute(this);
+                } catch (RejectedExecutionException e) {
+                    idleWorkers.decrementAndGet();
+                    activeWorkers.decrementAndGet();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /** 队列非空时重新占用一个消费任务名额,已达上限说明其他消费任务会继续消费. */
+    private boolean tryResume() {
+        while (true) {
+            int workers = activeWorkers.get();
+            if (workers >= maxWorkers) {
+                return false;
+            }
+            if (activeWorkers.compareAndSet(workers, workers + 1)) {
+                idleWorkers.incrementAndGet();
+                return true;
+            }
+        }
     }
 
     @Override
     public void run() {
-        PendingPost pendingPost = queue.poll();
-        if (pendingPost == null) {
-            throw new IllegalStateException("No pending post available");
+        boolean running = true;
+        if (metrics != null) {
+            metrics.onStarted();
+        }
+        try {
+            while (running) {
+                PendingPost pendingPost;
+                // 领取之前不再算作空闲,之后入队的事件会按需启动新的消费任务.
+                idleWorkers.decrementAndGet();
+                // 多个消费任务并发执行,PendingPostQueue只允许单消费者,因此出队需要串行.
+                synchronized (queue) {
+                    pendingPost = queue.poll();
+                }
+                if (pendingPost == null) {
+                    activeWorkers.decrementAndGet();
+                    running = !queue.isEmpty() && tryResume();
+                    continue;
+                }
+                if (queued != null) {
+                    queued.decrementAndGet();
+                }
+                if (metrics != null) {
+                    metrics.onDequeued(pendingPost);
+                }
+                eventBus.invokeSubscriber(pendingPost);
+                idleWorkers.incrementAndGet();
+            }
+        } finally {
+            if (running) {
+                // 响应函数抛出异常导致异常退出时(此时不算空闲),归还名额并在需要时启动替代的消费任务.
+                activeWorkers.decrementAndGet();
+                startWorkersIfNeeded();
+            }
         }
-        eventBus.invokeSubscriber(pendingPost);
     }
 }
@@ -2,53 +2,117 @@ package org.greenrobot.eventbus;
 
 import android.util.Log;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * 后台通过线程池去执行事件响应回调.
  */
 final class BackgroundPoster implements Runnable{
-    private final PendingPostQueue queue;
+    private final PostQueue queue;
     private final EventBus eventBus;
 
-    private volatile boolean executorRunning;
+    /** 队列统计,未开启统计时为null. */
+    private final PosterMetrics metrics;
+
+    /** 是否已经有任务在线程池中消费队列,保证同一时刻只有一个消费者. */
+    private final AtomicBoolean executorRunning = new AtomicBoolean();
 
-    BackgroundPoster(EventBus eventBus) {
+    BackgroundPoster(EventBus eventBus, PostQueue queue, PosterMetrics metrics) {
         this.eventBus = eventBus;
-        queue = new PendingPostQueue();
+        this.queue = queue;
+        this.metrics = metrics;
+        if (metrics != null) {
+            metrics.track(queue);
+        }
+    }
+
+    /** @return 队列已满且按溢出策略拒绝时返回false. */
+    public boolean enqueue(Subscription subscription, Object event, boolean nonBlocking) {
+        PendingPost pendingPost = eventBus.getPendingPostPool().obtain(subscription, event);
+        if (!queue.enqueue(pendingPost, nonBlocking)) {
+            return false;
+        }
+        if (metrics != null) {
+            metrics.onEnqueued(1);
+        }
+        scheduleIfIdle();
+        return true;
+    }
+
+    /** 将一批PendingPost入队,没有容量限制时整体入队,只检查一次消费者状态. */
+    void enqueueAll(PendingPost first, PendingPost last, int count) {
+        if (queue.size() >= 0) {
+            enqueueEach(first, last);
+            return;
+        }
+        queue.enqueueAll(first, last);
+        if (metrics != null) {
+            metrics.onEnqueued(count);
+        }
+        scheduleIfIdle();
     }
 
-    public void enqueue(Subscription subscription, Object event) {
-        PendingPost pendingPost = PendingPost.obtainPendingPost(subscription, event);
-        synchronized (this) {
-            queue.enqueue(pendingPost);
-            if (!executorRunning) {
-                executorRunning = true;
-                eventBus.getExecutorService().execute(this);
+    /**
+     * 有容量限制时逐个入队,每个入队后立即调度消费者.
+     * BLOCK策略可能在中途等待空位,此时之前入队的PendingPost已经有消费者在处理,不会互相等待.
+     * 中途抛出异常时回收尚未入队的PendingPost.
+     */
+    private void enqueueEach(PendingPost first, PendingPost last) {
+        PendingPost pendingPost = first;
+        try {
+            while (pendingPost != null) {
+                PendingPost current = pendingPost;
+                pendingPost = current == last ? null : current.next;
+                if (queue.enqueue(current, false)) {
+                    if (metrics != null) {
+                        metrics.onEnqueued(1);
+                    }
+                    scheduleIfIdle();
+                }
+            }
+        } finally {
+            if (pendingPost != null) {
+                eventBus.getPendingPostPool().discardAll(pendingPost, last);
             }
         }
     }
 
+    private void scheduleIfIdle() {
+        // 入队之后再检查消费者状态,与run()中先置为false再检查队列配合,保证不会遗漏入队的事件.
+        if (executorRunning.compareAndSet(false, true)) {
+            if (metrics != null) {
+                metrics.onScheduled();
+            }
+            eventBus.getBackgroundExecutorService().execute(this);
+        }
+    }
+
     @Override
     public void run() {
+        boolean running = true;
+        if (metrics != null) {
+            metrics.onStarted();
+        }
         try {
-            try {
-                while (true) {
-                    PendingPost pendingPost = queue.poll(1000);
-                    if (pendingPost == null) {
-                        synchronized (this) {
-                            pendingPost = queue.poll();
-                            if (pendingPost == null) {
-                                executorRunning = false;
-                                return;
-                            }
-                        }
-                    }
-                    eventBus.invokeSubscriber(pendingPost);
+            while (running) {
+                PendingPost pendingPost = queue.poll(1000);
+                if (pendingPost == null) {
+                    executorRunning.set(false);
+                    // 放弃消费权之后队列中又有新事件,并且没有其他任务接手时,继续消费.
+                    running = !queue.isEmpty() && executorRunning.compareAndSet(false, true);
+                    continue;
                 }
-            } catch (InterruptedException e) {
-                Log.e("EventBus", Thread.currentThread().getName() + " was interruppted", e);
+                if (metrics != null) {
+                    metrics.onDequeued(pendingPost);
+                }
+                eventBus.invokeSubscriber(pendingPost);
+            }
+        } catch (InterruptedException e) {
+            Log.e("EventBus", Thread.currentThread().getName() + " was interruppted", e);
+        } finally {
+            if (running) {
+                executorRunning.set(false);
             }
-        }finally {
-            executorRunning = false;
         }
     }
 }
@@ -0,0 +1,67 @@
+package org.greenrobot.eventbus;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * EventBus内部的统计信息,开启统计时才创建.
+ * 计数器和直方图在第一次用到时创建,之后的记录都不分配对象.
+ */
+final class DispatchMetrics {
+    /** Map<事件类类型, 发布次数>. */
+    private final ConcurrentHashMap<Class<?>, StripedCounter> postsByEventType =
+            new ConcurrentHashMap<>();
+
+    /** Map<订阅函数, 执行耗时>,同一订阅函数的不同订阅者共用一个直方图. */
+    private final ConcurrentHashMap<SubscriberMethod, LatencyHistogram> invokeTimes =
+            new ConcurrentHashMap<>();
+
+    final PosterMetrics mainPoster = new PosterMetrics();
+    final PosterMetrics backgroundPoster = new PosterMetrics();
+    final PosterMetrics asyncPoster = new PosterMetrics();
+    final PosterMetrics partitionedPoster = new PosterMetrics();
+
+    void countPost(Class<?> eventClass) {
+        StripedCounter counter = postsByEventType.get(eventClass);
+        if (counter == null) {
+            StripedCounter created = new StripedCounter();
+            counter = postsByEventType.putIfAbsent(eventClass, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.increment();
+    }
+
+    /** 注册时为订阅函数取得执行耗时直方图,保存在Subscription中. */
+    LatencyHistogram invokeTimeOf(SubscriberMethod subscriberMethod) {
+        LatencyHistogram histogram = invokeTimes.get(subscriberMethod);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = invokeTimes.putIfAbsent(subscriberMethod, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    EventBusMetrics snapshot(long poolHits, long poolMisses) {
+        Map<Class<?>, Long> posts = new HashMap<>();
+        for (Map.Entry<Class<?>, StripedCounter> entry : postsByEventType.entrySet()) {
+            posts.put(entry.getKey(), entry.getValue().sum());
+        }
+        Map<String, EventBusMetrics.Histogram> invokes = new HashMap<>();
+        for (Map.Entry<SubscriberMethod, LatencyHistogram> entry : invokeTimes.entrySet()) {
+            invokes.put(entry.getKey().methodString(), entry.getValue().snapshot());
+        }
+        Map<ThreadMode, EventBusMetrics.PosterStats> posters = new EnumMap<>(ThreadMode.class);
+        posters.put(ThreadMode.MAIN, mainPoster.snapshot());
+        posters.put(ThreadMode.BACKGROUND, backgroundPoster.snapshot());
+        posters.put(ThreadMode.ASYNC, asyncPoster.snapshot());
+        posters.put(ThreadMode.PARTITIONED, partitionedPoster.snapshot());
+        return new EventBusMetrics(posts, invokes, posters, poolHits, poolMisses);
+    }
+}
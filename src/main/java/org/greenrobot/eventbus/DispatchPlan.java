@@ -0,0 +1,81 @@
+package org.greenrobot.eventbus;
+
+/**
+ * 某个具体事件类的分发计划.
+ * 将事件类及其所有父类,接口对应的订阅者快照按分发顺序拼接成一个数组,没有订阅者的类型已被剔除.
+ */
+final class DispatchPlan {
+    /** 构建该计划时注册表的版本号,与EventBus当前版本号不一致时计划失效. */
+    final int epoch;
+
+    /** 按事件类型顺序拼接的订阅者数组,每个类型内部按优先级从高到低排列. */
+    final Subscription[] subscriptions;
+
+    /** 每个事件类型在subscriptions中的结束下标(不包含),用于取消分发时跳到下一个事件类型. */
+    final int[] typeEnds;
+
+    /**
+     * 与typeEnds一一对应的按键订阅索引,该类型没有按键订阅时对应元素为null.
+     * 所有类型都没有按键订阅时为null.
+     */
+    final KeyedSubscriptions[] keyedSubscriptions;
+
+    /** 观察该事件类的EventTap,同一个EventTap只出现一次,没有时为null. */
+    final EventTap[] taps;
+
+    DispatchPlan(int epoch, Subscription[] subscriptions, int[] typeEnds,
+                 KeyedSubscriptions[] keyedSubscriptions, EventTap[] taps) {
+        this.epoch = epoch;
+        this.subscriptions = subscriptions;
+        this.typeEnds = typeEnds;
+        this.keyedSubscriptions = keyedSubscriptions;
+        this.taps = taps;
+    }
+
+    /**
+     * 返回键为key的事件实际使用的分发计划:每个事件类型内将不按键的订阅和该键的订阅按优先级合并,
+     * 相同优先级时不按键的订阅在前.没有该键的订阅时直接返回当前计划,不产生新对象.
+     */
+    DispatchPlan forKey(Object key) {
+        int countTypes = typeEnds.length;
+        Subscription[][] matches = null;
+        int total = subscriptions.length;
+        for (int h = 0; h < countTypes; h ++) {
+            KeyedSubscriptions index = keyedSubscriptions[h];
+            Subscription[] keyed = index != null ? index.get(key) : null;
+            if (keyed != null && keyed.length > 0) {
+                if (matches == null) {
+                    matches = new Subscription[countTypes][];
+                }
+                matches[h] = keyed;
+                total += keyed.length;
+            }
+        }
+        if (matches == null) {
+            return this;
+        }
+
+        Subscription[] merged = new Subscription[total];
+        int[] mergedEnds = new int[countTypes];
+        int position = 0;
+        int start = 0;
+        for (int h = 0; h < countTypes; h ++) {
+            int end = typeEnds[h];
+            Subscription[] keyed = matches[h];
+            int i = start;
+            int k = 0;
+            int keyedSize = keyed != null ? keyed.length : 0;
+            while (i < end || k < keyedSize) {
+                if (k == keyedSize || (i < end && subscriptions[i].subscriberMethod.priority
+                        >= keyed[k].subscriberMethod.priority)) {
+                    merged[position ++] = subscriptions[i ++];
+                } else {
+                    merged[position ++] = keyed[k ++];
+                }
+            }
+            mergedEnds[h] = position;
+            start = end;
+        }
+        return new DispatchPlan(epoch, merged, mergedEnds, null, taps);
+    }
+}
@@ -3,15 +3,20 @@ package org.greenrobot.eventbus;
 import android.os.Looper;
 import android.util.Log;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /** EventBus,Android平台的订阅,发布总线机制. */
 @SuppressWarnings({"unused", "FieldCanBeLocal"})
@@ -28,6 +33,15 @@ public class EventBus {
     };
 
     private final boolean throwSubscriberException;
+
+    /** 同一订阅两次异常报告之间的最短间隔. */
+    private final long exceptionReportIntervalNanos;
+
+    /** 熔断配置:冷却时间为0表示未开启,连续失败或连续超时达到次数时熔断. */
+    private final long breakerCoolDownNanos;
+    private final int breakerMaxFailures;
+    private final long breakerSlowNanos;
+    private final int breakerMaxSlow;
     private final boolean logSubscriberExceptions;
     private final boolean logNoSubscriberMessages;
     private final boolean sendSubscriberExceptionEvent;
@@ -51,18 +65,62 @@ public class EventBus {
     }
 
     private static final EventBusBuilder DEFAULT_BUILDER = new EventBusBuilder();
+
+    /** 通过构建器自定义EventBus,例如添加注解处理器生成的索引. */
+    public static EventBusBuilder builder() {
+        return new EventBusBuilder();
+    }
+
     public EventBus() {
         this(DEFAULT_BUILDER);
     }
 
-    /** Map<订阅事件, 订阅该事件的订阅者集合>. */
-    private final Map<Class<?>, CopyOnWriteArrayList<Subscription>> subscriptionsByEventType;
+    /** 空的订阅者数组,用于删除最后一个订阅者时的快照. */
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+    private static final TapRegistration[] NO_TAPS = new TapRegistration[0];
+
+    /**
+     * Map<订阅事件, 订阅该事件的订阅者快照数组>.
+     * 数组按优先级从高到低排列且发布后不再修改,写操作在this锁内复制出新数组后整体替换,
+     * 因此post读取时无需加锁.
+     */
+    private final ConcurrentHashMap<Class<?>, Subscription[]> subscriptionsByEventType;
+
+    /**
+     * Map<订阅事件, Map<键, 以该键注册的订阅者快照数组>>.
+     * 与subscriptionsByEventType相同,快照数组按优先级排列,在this锁内整体替换.
+     */
+    private final ConcurrentHashMap<Class<?>, KeyedSubscriptions> keyedSubscriptionsByEventType;
+
+    /** 按键注册的订阅者及其键,注销时据此找到按键索引中的订阅. */
+    private final Map<Object, Object> keysBySubscriber;
+
+    /** Map<具体事件类类型, 分发计划>,post时只需一次查找加一次数组遍历. */
+    private final ConcurrentHashMap<Class<?>, DispatchPlan> dispatchPlans;
+
+    /** 注册表版本号,subscribe和unsubscribeByEventType修改订阅者快照后递增,使已缓存的分发计划失效. */
+    private volatile int registryEpoch;
+
+    /** 已注册的EventTap快照,在this锁内整体替换,变化后同样递增registryEpoch. */
+    private volatile TapRegistration[] taps = NO_TAPS;
 
     /** Map<订阅者, 订阅事件集合>. */
     private final Map<Object, List<Class<?>>> typesBySubscriber;
 
-    /** Map<订阅事件类类型,订阅事件实例对象>. */
-    private final Map<Class<?>, Object> stickyEvents;
+    /** Map<弱引用注册的订阅者, 其弱引用>,不阻止订阅者被回收. */
+    private final Map<Object, WeakSubscriber> weakSubscribers;
+
+    /** 已被回收的弱引用订阅者,由purgeCollectedSubscribers批量清理. */
+    private final ReferenceQueue<Object> collectedSubscribers;
+
+    /** 是否已经安排了清理任务,避免每次遇到已回收的订阅者都提交任务. */
+    private final AtomicBoolean purgeScheduled;
+
+    /** sticky事件存储,按可赋值的事件类型建立索引. */
+    private final StickyEventStore stickyEvents;
+
+    /** PendingPost对象缓冲池,各个Poster入队时从中获取,分发完成后释放. */
+    private final PendingPostPool pendingPostPool;
 
     /** 主线程Handler实现类. */
     private final HandlerPoster mainThreadPoster;
@@ -73,6 +131,12 @@ public class EventBus {
     /** 继承Runnable的异步线程处理类, 与BackgroundPoster不同的是,订阅函数的执行是并发进行的. */
     private final AsyncPoster asyncPoster;
 
+    /** 按事件键分区,同一键串行,不同键并行的后台投递类. */
+    private final PartitionedPoster partitionedPoster;
+
+    /** 订阅者很多时并行执行同一优先级的订阅函数,未开启时为null. */
+    private final ParallelFanOut parallelFanOut;
+
     private final int indexCount;
 
     /** 订阅者响应函数信息存储和查找类. */
@@ -81,13 +145,54 @@ public class EventBus {
     /** 用于订阅函数后台执行的线程池. */
     private final ExecutorService executorService;
 
+    /** 内部统计,未开启统计时为null. */
+    private final DispatchMetrics metrics;
+
+    /** 执行较慢的订阅函数检测,没有设置阈值时为null. */
+    private final SlowSubscriberDetector slowSubscriberDetector;
+
+    /** ASYNC订阅函数及BACKGROUND消费循环实际使用的执行器,开启虚拟线程时可能与executorService不同. */
+    private final ExecutorService asyncExecutorService;
+    private final ExecutorService backgroundExecutorService;
+
     EventBus(EventBusBuilder builder) {
-        subscriptionsByEventType = new HashMap<>();
+        subscriptionsByEventType = new ConcurrentHashMap<>();
+        keyedSubscriptionsByEventType = new ConcurrentHashMap<>();
+        dispatchPlans = new ConcurrentHashMap<>();
         typesBySubscriber = new HashMap<>();
-        stickyEvents = new ConcurrentHashMap<>();
-        mainThreadPoster = new HandlerPoster(this, Looper.myLooper(), 10);
-        backgroundPoster = new BackgroundPoster(this);
-        asyncPoster = new AsyncPoster(this);
+        keysBySubscriber = new HashMap<>();
+        weakSubscribers = new WeakHashMap<>();
+        collectedSubscribers = new ReferenceQueue<>();
+        purgeScheduled = new AtomicBoolean();
+        stickyEvents = new StickyEventStore(builder.eventInheritance, builder.stickyEventFile != null
+                ? new StickyEventFile(builder.stickyEventFile, builder.stickyEventCodec) : null);
+        metrics = builder.metrics ? new DispatchMetrics() : null;
+        slowSubscriberDetector = builder.slowSubscriberThresholdNanos != null
+                ? new SlowSubscriberDetector(this, builder.slowSubscriberThresholdNanos,
+                        builder.slowSubscriberSampleRate, builder.slowSubscriberListener)
+                : null;
+        pendingPostPool = new PendingPostPool(builder.pendingPostPooling,
+                builder.pendingPostLocalCacheSize, builder.pendingPostPoolSize, metrics != null);
+        mainThreadPoster = new HandlerPoster(this, Looper.myLooper(),
+                builder.maxMillisInsideHandleMessage,
+                createPostQueue(builder, WaitStrategy.BLOCKING,
+                        builder.mainQueueCapacity, builder.mainOverflowPolicy),
+                metrics != null ? metrics.mainPoster : null);
+        backgroundPoster = new BackgroundPoster(this,
+                createPostQueue(builder, builder.waitStrategy,
+                        builder.backgroundQueueCapacity, builder.backgroundOverflowPolicy),
+                metrics != null ? metrics.backgroundPoster : null);
+        asyncPoster = new AsyncPoster(this,
+                new PendingPostQueue(pendingPostPool, WaitStrategy.BLOCKING,
+                        builder.asyncQueueCapacity, builder.asyncOverflowPolicy),
+                builder.maxAsyncWorkers, metrics != null ? metrics.asyncPoster : null);
+        PendingPostQueue[] laneQueues = new PendingPostQueue[builder.partitionLanes];
+        for (int i = 0; i < laneQueues.length; i ++) {
+            laneQueues[i] = new PendingPostQueue(pendingPostPool, builder.waitStrategy,
+                    builder.partitionedQueueCapacity, builder.partitionedOverflowPolicy);
+        }
+        partitionedPoster = new PartitionedPoster(this, laneQueues,
+                metrics != null ? metrics.partitionedPoster : null);
         indexCount = builder.subscriberInfoIndexes != null ?
                 builder.subscriberInfoIndexes.size() : 0;
         subscriberMethodFinder = new SubscriberMethodFinder(builder.subscriberInfoIndexes,
@@ -97,29 +202,256 @@ public class EventBus {
         sendSubscriberExceptionEvent = builder.sendSubscriberExceptionEvent;
         sendNoSubscriberEvent = builder.sendNoSubscriberEvent;
         throwSubscriberException = builder.throwSubscriberException;
+        exceptionReportIntervalNanos = builder.exceptionReportIntervalNanos;
+        breakerCoolDownNanos = builder.breakerCoolDownNanos;
+        breakerMaxFailures = builder.breakerMaxFailures;
+        breakerSlowNanos = builder.breakerSlowNanos;
+        breakerMaxSlow = builder.breakerMaxSlow;
         eventInheritance = builder.eventInheritance;
         executorService = builder.executorService;
+        // 在后台提前读取持久化的sticky事件,第一次访问sticky事件时才需要等待.
+        stickyEvents.preload(executorService);
+        parallelFanOut = builder.parallelFanOutThreshold > 0 ? new ParallelFanOut(this,
+                executorService, builder.parallelFanOutThreshold, builder.parallelFanOutParallelism)
+                : null;
+        asyncExecutorService = selectExecutor(builder.virtualThreadsForAsync);
+        backgroundExecutorService = selectExecutor(builder.virtualThreadsForBackground);
+        if (builder.preloadClasses != null) {
+            preload(builder.preloadClasses.toArray(new Class<?>[builder.preloadClasses.size()]));
+        }
+    }
+
+    /** MAIN和BACKGROUND的队列,开启优先级排队时按订阅函数优先级分级. */
+    private PostQueue createPostQueue(EventBusBuilder builder, WaitStrategy waitStrategy,
+                                      int capacity, OverflowPolicy overflowPolicy) {
+        if (builder.priorityQueuingStarvationLimit > 0) {
+            return new PriorityPostQueue(pendingPostPool, waitStrategy, capacity, overflowPolicy,
+                    builder.priorityQueuingStarvationLimit);
+        }
+        return new PendingPostQueue(pendingPostPool, waitStrategy, capacity, overflowPolicy);
+    }
+
+    /** 要求使用虚拟线程且运行时支持时返回虚拟线程执行器,否则回退到配置的线程池. */
+    private ExecutorService selectExecutor(boolean virtualThreads) {
+        ExecutorService virtualExecutor = virtualThreads ? VirtualThreads.executor() : null;
+        return virtualExecutor != null ? virtualExecutor : executorService;
     }
 
     ExecutorService getExecutorService() {
         return executorService;
     }
 
+    /** 执行ASYNC订阅函数的执行器. */
+    ExecutorService getAsyncExecutorService() {
+        return asyncExecutorService;
+    }
+
+    /** 运行BACKGROUND和PARTITIONED消费循环的执行器. */
+    ExecutorService getBackgroundExecutorService() {
+        return backgroundExecutorService;
+    }
+
+    /** ASYNC订阅函数是否实际运行在虚拟线程上. */
+    public boolean isAsyncOnVirtualThreads() {
+        return asyncExecutorService != executorService;
+    }
+
+    PendingPostPool getPendingPostPool() {
+        return pendingPostPool;
+    }
+
+    /** PendingPost缓冲池命中的次数. */
+    public long getPendingPostPoolHitCount() {
+        return pendingPostPool.getHitCount();
+    }
+
+    /** PendingPost缓冲池未命中,需要新建对象的次数. */
+    public long getPendingPostPoolMissCount() {
+        return pendingPostPool.getMissCount();
+    }
+
+    /**
+     * 获取统计信息的快照.
+     * @throws EventBusException 构建时没有开启统计
+     */
+    public EventBusMetrics getMetrics() {
+        if (metrics == null) {
+            throw new EventBusException("Metrics are disabled, see EventBusBuilder.metrics(boolean)");
+        }
+        return metrics.snapshot(pendingPostPool.getHitCount(), pendingPostPool.getMissCount());
+    }
+
+    /**
+     * 处理订阅函数抛出的异常.
+     * 同一个订阅在exceptionReportIntervalNanos内只记录日志和发送一次SubscriberExceptionEvent,
+     * 期间的其他异常只计数,在下一次报告中通过suppressedCount给出.
+     */
     private void handleSubscriberException(Subscription subscription, Object event, Throwable cause) {
-        // do nothing
+        if (event instanceof SubscriberExceptionEvent) {
+            // 处理SubscriberExceptionEvent的订阅函数抛出异常时只记录日志,避免循环.
+            if (logSubscriberExceptions
+                    && subscription.health.tryReport(exceptionReportIntervalNanos) >= 0) {
+                Log.e("EventBus", "SubscriberExceptionEvent subscriber "
+                        + subscription.subscriberMethod.methodString() + " threw an exception", cause);
+                SubscriberExceptionEvent exceptionEvent = (SubscriberExceptionEvent) event;
+                Log.e("EventBus", "Initial event " + exceptionEvent.causingEvent + " caused exception in "
+                        + exceptionEvent.causingSubscriber, exceptionEvent.throwable);
+            }
+            return;
+        }
+        if (throwSubscriberException) {
+            throw new EventBusException("Invoking subscriber failed", cause);
+        }
+        if (!logSubscriberExceptions && !sendSubscriberExceptionEvent) {
+            return;
+        }
+        int suppressed = subscription.health.tryReport(exceptionReportIntervalNanos);
+        if (suppressed < 0) {
+            return;
+        }
+        if (logSubscriberExceptions) {
+            Log.e("EventBus", "Could not dispatch event: " + event.getClass() + " to subscriber "
+                    + subscription.subscriberMethod.methodString()
+                    + (suppressed > 0 ? " (" + suppressed + " similar failures not logged)" : ""),
+                    cause);
+        }
+        if (sendSubscriberExceptionEvent) {
+            post(new SubscriberExceptionEvent(this, cause, event, subscription.getSubscriber(),
+                    suppressed));
+        }
+    }
+
+    /**
+     * 订阅函数失败后更新熔断状态.
+     * @param trial 是否是熔断冷却结束后的试探执行
+     */
+    private void recordFailure(Subscription subscription, boolean trial) {
+        if (subscription.health.onFailure(breakerMaxFailures, breakerCoolDownNanos, trial)) {
+            Log.w("EventBus", "Suspending subscriber " + subscription.subscriberMethod.methodString()
+                    + " after " + breakerMaxFailures + " consecutive failures");
+        }
+    }
+
+    /**
+     * 订阅函数成功执行后更新熔断状态.
+     * @param trial 是否是熔断冷却结束后的试探执行
+     */
+    private void recordSuccess(Subscription subscription, long durationNanos, boolean trial) {
+        if (subscription.health.onSuccess(durationNanos, breakerSlowNanos, breakerMaxSlow,
+                breakerCoolDownNanos, trial)) {
+            Log.w("EventBus", "Suspending subscriber " + subscription.subscriberMethod.methodString()
+                    + " after " + breakerMaxSlow + " consecutive slow invocations");
+        }
+    }
+
+    /**
+     * 在线程池中并行查找订阅者类的订阅函数并缓存,之后第一次register这些类时不需要再通过反射查找.
+     * 查找尚未完成时register会等待正在进行的查找,不会重复查找;查找还未开始时直接在register的线程上执行.
+     * 订阅者类没有订阅函数等错误在register时抛出.
+     */
+    public void preload(Class<?>... subscriberClasses) {
+        for (Class<?> subscriberClass : subscriberClasses) {
+            subscriberMethodFinder.preload(executorService, subscriberClass);
+        }
+    }
+
+    /**
+     * 注册一个EventTap,在发布线程上观察post的eventType(包括子类和实现类)的事件,参见EventTap.
+     * 同一个EventTap可以为多个类型注册,事件同时匹配多个类型时也只回调一次.
+     */
+    public synchronized void addTap(Class<?> eventType, EventTap tap) {
+        if (eventType == null || tap == null) {
+            throw new NullPointerException("eventType and tap must not be null");
+        }
+        TapRegistration[] current = taps;
+        TapRegistration[] newTaps = Arrays.copyOf(current, current.length + 1);
+        newTaps[current.length] = new TapRegistration(eventType, tap);
+        taps = newTaps;
+        registryEpoch ++;
+    }
+
+    /** 注销EventTap的所有注册. */
+    public synchronized void removeTap(EventTap tap) {
+        TapRegistration[] current = taps;
+        List<TapRegistration> remaining = new ArrayList<>(current.length);
+        for (TapRegistration registration : current) {
+            if (registration.tap != tap) {
+                remaining.add(registration);
+            }
+        }
+        if (remaining.size() != current.length) {
+            taps = remaining.toArray(new TapRegistration[remaining.size()]);
+            registryEpoch ++;
+        }
     }
 
     /** 订阅事件. */
     public void register(Object subscriber) {
+        register(subscriber, false, null);
+    }
+
+    /**
+     * 按键订阅事件,订阅者只收到实现了KeyedEvent且getEventKey()与key相等的事件.
+     * 分发时通过(事件类型, 键)索引直接找到匹配的订阅者,不会访问以其他键注册的订阅者.
+     * 同一订阅者只能以一个键注册,需要更换键时先调用unregister.
+     */
+    public void register(Object subscriber, Object key) {
+        if (key == null) {
+            throw new NullPointerException("Subscription key must not be null");
+        }
+        register(subscriber, false, key);
+    }
+
+    /**
+     * 以弱引用方式订阅事件,EventBus不会阻止订阅者被回收.
+     * 订阅者被回收后不再收到事件,其订阅信息会被批量清理,也可以像普通订阅者一样调用unregister.
+     */
+    public void registerWeak(Object subscriber) {
+        register(subscriber, true, null);
+    }
+
+    private void register(Object subscriber, boolean weak, Object key) {
         // 获取订阅者类的类类型.
         Class<?> subscriberClass = subscriber.getClass();
         // 通过反射机制获取订阅者全部的响应函数信息.
         List<SubscriberMethod> subscriberMethods = subscriberMethodFinder.
                 findSubscriberMethods(subscriberClass);
         // 构造订阅函数-订阅事件集合 与 订阅事件-订阅函数集合
+        List<Subscription> stickySubscriptions = null;
         synchronized (this) {
+            purgeCollectedSubscribers();
+            if (!weak && typesBySubscriber.containsKey(subscriber)
+                    && (key != null || keysBySubscriber.containsKey(subscriber))) {
+                // 按键订阅与普通订阅分别存放,无法逐个订阅函数检查重复,因此整体拒绝.
+                throw new EventBusException("Subscriber " + subscriber.getClass()
+                        + " is already registered");
+            }
+            if (key != null) {
+                keysBySubscriber.put(subscriber, key);
+            }
+            WeakSubscriber weakSubscriber = null;
+            if (weak) {
+                weakSubscriber = weakSubscribers.get(subscriber);
+                if (weakSubscriber == null) {
+                    weakSubscriber = new WeakSubscriber(subscriber, collectedSubscribers);
+                    weakSubscribers.put(subscriber, weakSubscriber);
+                }
+            }
             for (SubscriberMethod subscriberMethod : subscriberMethods) {
-                subscribe(subscriber, subscriberMethod);
+                Subscription subscription = subscribe(subscriber, weakSubscriber, subscriberMethod,
+                        key);
+                if (subscriberMethod.sticky) {
+                    if (stickySubscriptions == null) {
+                        stickySubscriptions = new ArrayList<>();
+                    }
+                    stickySubscriptions.add(subscription);
+                }
+            }
+        }
+        // 在注册锁之外分发sticky事件,订阅函数执行期间不会阻塞其他线程的注册和注销.
+        if (stickySubscriptions != null) {
+            for (Subscription subscription : stickySubscriptions) {
+                postStickyEventsToSubscription(subscription);
             }
         }
     }
@@ -129,74 +461,143 @@ public class EventBus {
      * 1. 订阅事件->订阅者集合.
      * 2. 订阅者->订阅事件集合.
      * @param subscriber 订阅者
+     * @param weakSubscriber 弱引用注册时订阅者的弱引用,普通注册时为null
      * @param subscriberMethod 订阅者中的响应函数
+     * @param key 按键注册时的键,普通注册时为null
      */
-    private void subscribe(Object subscriber, SubscriberMethod subscriberMethod) {
+    private Subscription subscribe(Object subscriber, WeakSubscriber weakSubscriber,
+                                   SubscriberMethod subscriberMethod, Object key) {
         Class<?> eventType = subscriberMethod.eventType;
-        Subscription newSubscription = new Subscription(subscriber, subscriberMethod);
+        LatencyHistogram invokeTime = metrics != null ? metrics.invokeTimeOf(subscriberMethod) : null;
+        Subscription newSubscription = weakSubscriber != null
+                ? new Subscription(weakSubscriber, subscriberMethod, invokeTime)
+                : new Subscription(subscriber, subscriberMethod, invokeTime, key);
         // 一个Event事件可能会被多个订阅者订阅,因此这里使用Map结构,存储Event事件对应的订阅者集合.
         // 此外,一个订阅者类中可能会有多个订阅函数,有几个订阅函数这里就解析成有几个订阅者.
-        CopyOnWriteArrayList<Subscription> subscriptions = subscriptionsByEventType.get(eventType);
+        KeyedSubscriptions keyedSubscriptions = null;
+        Subscription[] subscriptions;
+        if (key != null) {
+            keyedSubscriptions = keyedSubscriptionsByEventType.get(eventType);
+            if (keyedSubscriptions == null) {
+                keyedSubscriptions = new KeyedSubscriptions();
+                keyedSubscriptionsByEventType.put(eventType, keyedSubscriptions);
+            }
+            subscriptions = keyedSubscriptions.get(key);
+        } else {
+            subscriptions = subscriptionsByEventType.get(eventType);
+        }
         if (subscriptions == null) {
-            subscriptions = new CopyOnWriteArrayList<>();
-            subscriptionsByEventType.put(eventType, subscriptions);
+            subscriptions = NO_SUBSCRIPTIONS;
         } else {
-            if (subscriptions.contains(newSubscription)) {
-                throw new EventBusException("Subscriber " + subscriber.getClass()
-                        + " already registered to event " + eventType);
+            for (Subscription subscription : subscriptions) {
+                if (subscription.equals(newSubscription)) {
+                    throw new EventBusException("Subscriber " + subscriber.getClass()
+                            + " already registered to event " + eventType);
+                }
             }
         }
 
-        // 按照方法优先级从高到低的顺序将订阅者加入到订阅者集合中.
-        int size = subscriptions.size();
-        for (int i = 0; i <= size; i ++) {
-            if (i == size ||
-                    subscriberMethod.priority > subscriptions.get(i).subscriberMethod.priority) {
-                subscriptions.add(i, newSubscription);
-                break;
-            }
+        // 按照方法优先级从高到低的顺序将订阅者插入到新的快照数组中,相同优先级的按注册顺序排列.
+        int size = subscriptions.length;
+        int index = 0;
+        while (index < size &&
+                subscriberMethod.priority <= subscriptions[index].subscriberMethod.priority) {
+            index ++;
+        }
+        Subscription[] newSubscriptions = new Subscription[size + 1];
+        System.arraycopy(subscriptions, 0, newSubscriptions, 0, index);
+        newSubscriptions[index] = newSubscription;
+        System.arraycopy(subscriptions, index, newSubscriptions, index + 1, size - index);
+        // 发布新的快照,正在遍历旧数组的post线程不受影响.
+        if (keyedSubscriptions != null) {
+            keyedSubscriptions.put(key, newSubscriptions);
+        } else {
+            subscriptionsByEventType.put(eventType, newSubscriptions);
         }
+        // 快照发布之后再递增版本号,保证按新版本号构建的分发计划一定能看到新快照.
+        registryEpoch ++;
 
         // 当前订阅者订阅了哪些事件集合.
-        List<Class<?>> subscribedEvents = typesBySubscriber.get(subscriber);
-        if (subscribedEvents == null) {
-            subscribedEvents = new ArrayList<>();
-            typesBySubscriber.put(subscriber, subscribedEvents);
+        List<Class<?>> subscribedEvents;
+        if (weakSubscriber != null) {
+            subscribedEvents = weakSubscriber.eventTypes;
+        } else {
+            subscribedEvents = typesBySubscriber.get(subscriber);
+            if (subscribedEvents == null) {
+                subscribedEvents = new ArrayList<>();
+                typesBySubscriber.put(subscriber, subscribedEvents);
+            }
         }
         // 将订阅事件加入到当前订阅者的订阅事件集合中.
         subscribedEvents.add(eventType);
 
-        // 如果订阅方法为sticky类型,则立即分发sticky事件.
-        if (subscriberMethod.sticky) {
-            // eventInheritance的作用:是否响应订阅事件的父类事件.
-            if (eventInheritance) {
-                Set<Map.Entry<Class<?>, Object>> entries = stickyEvents.entrySet();
-                for (Map.Entry<Class<?>, Object> entry : entries) {
-                    Class<?> candidateEventType = entry.getKey();
-                    if (eventType.isAssignableFrom(candidateEventType)) {
-                        Object stickyEvent = entry.getValue();
-                        checkPostStickyEventToSubscription(newSubscription, stickyEvent);
-                    }
-                }
-            } else {
-                Object stickyEvent = stickyEvents.get(eventType);
-                postToSubscription(newSubscription, stickyEvent,
-                        Looper.getMainLooper() == Looper.myLooper());
+        return newSubscription;
+    }
+
+    /** 将已保存的sticky事件分发给新注册的sticky订阅函数,只访问与其订阅类型匹配的事件. */
+    private void postStickyEventsToSubscription(Subscription subscription) {
+        List<Object> matching = stickyEvents.matching(subscription.subscriberMethod.eventType);
+        if (matching.isEmpty()) {
+            return;
+        }
+        boolean isMainThread = Looper.getMainLooper() == Looper.myLooper();
+        for (Object stickyEvent : matching) {
+            // 注册之后订阅者可能已经在其他线程中注销.
+            if (!subscription.active) {
+                return;
+            }
+            if (!subscription.acceptsKeyOf(stickyEvent)) {
+                continue;
             }
+            postToSubscription(subscription, stickyEvent, isMainThread);
         }
     }
 
-    private void checkPostStickyEventToSubscription(Subscription newSubscription, Object stickyEvent) {
-        if (stickyEvent != null) {
-            postToSubscription(newSubscription, stickyEvent,
-                    Looper.getMainLooper() == Looper.myLooper());
-        }
+    /**
+     * 保存sticky事件并分发.每个事件类只保存最新的一个事件,
+     * 之后注册的sticky订阅函数会立即收到它.
+     */
+    public void postSticky(Object event) {
+        stickyEvents.put(event);
+        // 先保存再分发,订阅者在响应函数中也可以通过getStickyEvent取到该事件.
+        post(event);
+    }
+
+    /** 获取指定事件类最新的sticky事件. */
+    public <T> T getStickyEvent(Class<T> eventType) {
+        return eventType.cast(stickyEvents.get(eventType));
+    }
+
+    /** 移除并返回指定事件类的sticky事件. */
+    public <T> T removeStickyEvent(Class<T> eventType) {
+        return eventType.cast(stickyEvents.remove(eventType));
+    }
+
+    /** 当前保存的sticky事件就是event时移除它. */
+    public boolean removeStickyEvent(Object event) {
+        return stickyEvents.remove(event);
+    }
+
+    public void removeAllStickyEvents() {
+        stickyEvents.clear();
     }
 
     /** 当前线程的事件分发类. */
     final static class PostingThreadState {
         /** 当前线程的发布事件队列. */
-        final List<Object> eventQueue = new ArrayList<>();
+        final ArrayDeque<Object> eventQueue = new ArrayDeque<>();
+
+        /** postAll批量分发时复用的批次状态. */
+        final PostBatch reusableBatch = new PostBatch();
+
+        /** 当前正在进行的批量分发,非批量分发时为null. */
+        PostBatch batch;
+
+        /** 是否由tryPost发起,Poster队列已满时直接拒绝而不阻塞或抛出异常. */
+        boolean nonBlocking;
+
+        /** 本次分发中是否有投递因Poster队列已满而被拒绝. */
+        boolean rejected;
 
         /** 当前线程是否处于发送事件的过程中. */
         boolean isPosting;
@@ -219,43 +620,146 @@ public class EventBus {
         // 获取当前线程的Posting状态.
         PostingThreadState postingState = currentPostingThreadState.get();
         // 获取当前线程的事件队列.
-        List<Object> eventQueue = postingState.eventQueue;
-        eventQueue.add(event);
+        postingState.eventQueue.add(event);
+        if (!postingState.isPosting) {
+            postQueuedEvents(postingState, null);
+        }
+    }
+
+    /**
+     * 尝试分发事件,Poster队列已满时不阻塞发布线程,也不抛出异常.
+     * 如果当前线程正在分发事件(例如在订阅函数中调用),事件会排在当前分发之后处理,此时总是返回true.
+     * @return 有投递因队列已满被拒绝时返回false
+     */
+    public boolean tryPost(Object event) {
+        PostingThreadState postingState = currentPostingThreadState.get();
+        postingState.eventQueue.add(event);
+        if (postingState.isPosting) {
+            return true;
+        }
+        postingState.nonBlocking = true;
+        postingState.rejected = false;
+        try {
+            postQueuedEvents(postingState, null);
+            return !postingState.rejected;
+        } finally {
+            postingState.nonBlocking = false;
+            postingState.rejected = false;
+        }
+    }
 
+    /**
+     * 批量分发事件,效果与按顺序逐个调用post相同.
+     * 整批事件只获取一次线程状态和主线程判断,每个事件类只解析一次分发计划,
+     * 需要排队的投递在整批分发结束后,每个Poster只入队一次.
+     */
+    public void postAll(Collection<?> events) {
+        PostingThreadState postingState = currentPostingThreadState.get();
+        postingState.eventQueue.addAll(events);
         if (!postingState.isPosting) {
-            postingState.isMainThread = Looper.getMainLooper() == Looper.myLooper();
-            postingState.isPosting = true;
-            if (postingState.canceled) {
-                throw new EventBusException("Internal error. Abort state was not reset");
+            postQueuedEvents(postingState, postingState.reusableBatch);
+        }
+    }
+
+    /** 批量分发事件,参见{@link #postAll(Collection)}. */
+    public void postAll(Object... events) {
+        postAll(Arrays.asList(events));
+    }
+
+    private void postQueuedEvents(PostingThreadState postingState, PostBatch batch) {
+        ArrayDeque<Object> eventQueue = postingState.eventQueue;
+        postingState.isMainThread = Looper.getMainLooper() == Looper.myLooper();
+        postingState.isPosting = true;
+        postingState.batch = batch;
+        if (postingState.canceled) {
+            throw new EventBusException("Internal error. Abort state was not reset");
+        }
+        try {
+            // 循环处理当前线程eventQueue中的每一个event对象.
+            while (!eventQueue.isEmpty()) {
+                postSingleEvent(eventQueue.poll(), postingState);
             }
+        } finally {
+            // 处理完之后重置postingState一些标识信息,入队抛出异常时也要重置.
             try {
-                // 循环处理当前线程eventQueue中的每一个event对象.
-                while (!eventQueue.isEmpty()) {
-                    postSingleEvent(eventQueue.remove(0), postingState);
+                if (batch != null) {
+                    flushBatch(batch);
                 }
             } finally {
-                // 处理完知乎重置postingState一些标识信息.
+                postingState.batch = null;
                 postingState.isPosting = false;
                 postingState.isMainThread = false;
             }
         }
     }
 
+    /**
+     * 将批次中累积的PendingPost链表分别整体交给对应的Poster.
+     * 链表交给Poster之前先从批次中清除,Poster负责入队或回收其中的每个节点;
+     * 某个Poster抛出异常(例如FAIL策略)时,尚未交出的链表被回收,批次不再引用任何节点.
+     */
+    private void flushBatch(PostBatch batch) {
+        batch.plans.clear();
+        try {
+            PostBatch.Chain chain = batch.mainChain;
+            if (chain.size > 0) {
+                PendingPost head = chain.head, tail = chain.tail;
+                int size = chain.size;
+                chain.clear();
+                mainThreadPoster.enqueueAll(head, tail, size);
+            }
+            chain = batch.backgroundChain;
+            if (chain.size > 0) {
+                PendingPost head = chain.head, tail = chain.tail;
+                int size = chain.size;
+                chain.clear();
+                backgroundPoster.enqueueAll(head, tail, size);
+            }
+            chain = batch.asyncChain;
+            if (chain.size > 0) {
+                PendingPost head = chain.head, tail = chain.tail;
+                int size = chain.size;
+                chain.clear();
+                asyncPoster.enqueueAll(head, tail, size);
+            }
+        } finally {
+            batch.discard(pendingPostPool);
+        }
+    }
+
     private void postSingleEvent(Object event, PostingThreadState postingState) {
         Class<?> eventClass = event.getClass();
-        boolean subscriptionFound = false;
-        if (eventInheritance) {
-            List<Class<?>> eventTypes = lookupAllEventTypes(eventClass);
-            int countTypes = eventTypes.size();
-            for (int h = 0; h < countTypes; h ++) {
-                Class<?> clazz = eventTypes.get(h);
-                subscriptionFound |= postSingleEventForEventType(event, postingState, clazz);
+        if (metrics != null) {
+            metrics.countPost(eventClass);
+        }
+        DispatchPlan plan;
+        PostBatch batch = postingState.batch;
+        if (batch != null) {
+            // 批量分发时同一事件类只解析一次,注册表发生变化后重新解析.
+            plan = batch.plans.get(eventClass);
+            if (plan == null || plan.epoch != registryEpoch) {
+                plan = getDispatchPlan(eventClass);
+                batch.plans.put(eventClass, plan);
             }
         } else {
-            subscriptionFound = postSingleEventForEventType(event, postingState, eventClass);
+            plan = getDispatchPlan(eventClass);
         }
-
-        if (!subscriptionFound) {
+        EventTap[] planTaps = plan.taps;
+        if (planTaps != null) {
+            for (EventTap tap : planTaps) {
+                tap.onEvent(event);
+            }
+        }
+        if (plan.keyedSubscriptions != null && event instanceof KeyedEvent) {
+            // 只合并与事件键相同的按键订阅,其他键的订阅者不会被访问.
+            Object key = ((KeyedEvent) event).getEventKey();
+            if (key != null) {
+                plan = plan.forKey(key);
+            }
+        }
+        if (plan.subscriptions.length > 0) {
+            postDispatchPlan(event, postingState, plan);
+        } else {
             if (logNoSubscriberMessages) {
                 Log.d("EventBus", "No subscribers registered for event " + eventClass);
             }
@@ -266,8 +770,97 @@ public class EventBus {
         }
     }
 
+    /** 获取事件类的分发计划,缓存的计划版本号过期时重新构建. */
+    private DispatchPlan getDispatchPlan(Class<?> eventClass) {
+        // 先读取版本号再读取订阅者快照,构建期间注册表发生变化时,计划会在下一次post时被重新构建.
+        int epoch = registryEpoch;
+        DispatchPlan plan = dispatchPlans.get(eventClass);
+        if (plan == null || plan.epoch != epoch) {
+            plan = buildDispatchPlan(eventClass, epoch);
+            dispatchPlans.put(eventClass, plan);
+        }
+        return plan;
+    }
+
+    /** 将事件类(eventInheritance为true时包括其所有父类和接口)的订阅者快照拼接成分发计划. */
+    private DispatchPlan buildDispatchPlan(Class<?> eventClass, int epoch) {
+        List<Class<?>> eventTypes;
+        if (eventInheritance) {
+            eventTypes = lookupAllEventTypes(eventClass);
+        } else {
+            eventTypes = new ArrayList<>(1);
+            eventTypes.add(eventClass);
+        }
+
+        int countTypes = eventTypes.size();
+        Subscription[][] snapshots = new Subscription[countTypes][];
+        KeyedSubscriptions[] keyedIndexes = new KeyedSubscriptions[countTypes];
+        boolean hasKeyed = false;
+        int total = 0;
+        int nonEmptyTypes = 0;
+        for (int h = 0; h < countTypes; h ++) {
+            Class<?> eventType = eventTypes.get(h);
+            Subscription[] subscriptions = subscriptionsByEventType.get(eventType);
+            KeyedSubscriptions keyed = keyedSubscriptionsByEventType.get(eventType);
+            boolean nonEmpty = false;
+            if (subscriptions != null && subscriptions.length > 0) {
+                snapshots[h] = subscriptions;
+                total += subscriptions.length;
+                nonEmpty = true;
+            }
+            if (keyed != null && !keyed.isEmpty()) {
+                // 该类型只有按键订阅时也保留一段空的位置,分发时再合并事件键对应的订阅.
+                keyedIndexes[h] = keyed;
+                hasKeyed = true;
+                nonEmpty = true;
+            }
+            if (nonEmpty) {
+                nonEmptyTypes ++;
+            }
+        }
+
+        Subscription[] planSubscriptions = new Subscription[total];
+        int[] typeEnds = new int[nonEmptyTypes];
+        KeyedSubscriptions[] planKeyedIndexes = hasKeyed ? new KeyedSubscriptions[nonEmptyTypes] : null;
+        int position = 0;
+        int typeIndex = 0;
+        for (int h = 0; h < countTypes; h ++) {
+            Subscription[] subscriptions = snapshots[h];
+            if (subscriptions == null && keyedIndexes[h] == null) {
+                continue;
+            }
+            if (subscriptions != null) {
+                System.arraycopy(subscriptions, 0, planSubscriptions, position, subscriptions.length);
+                position += subscriptions.length;
+            }
+            if (planKeyedIndexes != null) {
+                planKeyedIndexes[typeIndex] = keyedIndexes[h];
+            }
+            typeEnds[typeIndex ++] = position;
+        }
+        return new DispatchPlan(epoch, planSubscriptions, typeEnds, planKeyedIndexes,
+                tapsFor(eventClass));
+    }
+
+    /** 按事件的实际类型匹配EventTap,与eventInheritance无关,同一个EventTap只保留一次. */
+    private EventTap[] tapsFor(Class<?> eventClass) {
+        TapRegistration[] registrations = taps;
+        List<EventTap> matching = null;
+        for (TapRegistration registration : registrations) {
+            if (registration.eventType.isAssignableFrom(eventClass)) {
+                if (matching == null) {
+                    matching = new ArrayList<>(2);
+                }
+                if (!matching.contains(registration.tap)) {
+                    matching.add(registration.tap);
+                }
+            }
+        }
+        return matching != null ? matching.toArray(new EventTap[matching.size()]) : null;
+    }
+
     /** 找出当前订阅事件类类型eventClass的所有父类的类类型和其实现的接口的类类型. */
-    private static List<Class<?>> lookupAllEventTypes(Class<?> eventClass) {
+    static List<Class<?>> lookupAllEventTypes(Class<?> eventClass) {
         synchronized (eventTypesCache) {
             List<Class<?>> eventTypes = eventTypesCache.get(eventClass);
             if (eventTypes == null) {
@@ -294,35 +887,107 @@ public class EventBus {
         }
     }
 
-    private boolean postSingleEventForEventType(Object event, PostingThreadState postingState,
-                                                Class<?> eventClass) {
-        CopyOnWriteArrayList<Subscription> subscriptions;
-        synchronized (this) {
-            // 获取订阅事件类类型对应的订阅者信息集合.(register函数时构造的集合)
-            subscriptions = subscriptionsByEventType.get(eventClass);
-        }
-
-        if (subscriptions != null && !subscriptions.isEmpty()) {
-            for (Subscription subscription : subscriptions) {
-                postingState.event = event;
-                postingState.subscription = subscription;
-                boolean aborted = false;
-                try {
-                    // 发布订阅事件给订阅函数
-                    postToSubscription(subscription, event, postingState.isMainThread);
-                    aborted = postingState.canceled;
-                } finally {
-                    postingState.event = null;
-                    postingState.subscription = null;
-                    postingState.canceled = false;
+    /** 按分发计划依次分发事件,某个订阅者取消分发时跳过同一事件类型中剩余的订阅者. */
+    private void postDispatchPlan(Object event, PostingThreadState postingState, DispatchPlan plan) {
+        Subscription[] subscriptions = plan.subscriptions;
+        int start = 0;
+        for (int end : plan.typeEnds) {
+            int i = start;
+            while (i < end) {
+                boolean aborted;
+                if (parallelFanOut != null) {
+                    // 订阅数组按优先级降序排列,同一优先级的订阅函数数量足够多时并行执行.
+                    int tierEnd = tierEnd(subscriptions, i, end);
+                    if (tierEnd - i >= parallelFanOut.threshold) {
+                        aborted = postTierInParallel(event, postingState, subscriptions, i, tierEnd);
+                        i = tierEnd;
+                        if (aborted) {
+                            break;
+                        }
+                        continue;
+                    }
                 }
+                aborted = postToSubscription(event, postingState, subscriptions[i]);
+                i ++;
                 if (aborted) {
                     break;
                 }
             }
-            return true;
+            start = end;
+        }
+    }
+
+    /** @return 订阅函数取消了事件分发时返回true. */
+    private boolean postToSubscription(Object event, PostingThreadState postingState,
+                                       Subscription subscription) {
+        postingState.event = event;
+        postingState.subscription = subscription;
+        try {
+            // 发布订阅事件给订阅函数
+            postToSubscription(subscription, event, postingState.isMainThread, postingState);
+            return postingState.canceled;
+        } finally {
+            postingState.event = null;
+            postingState.subscription = null;
+            postingState.canceled = false;
+        }
+    }
+
+    /** 返回从start开始与其优先级相同的一段订阅的结束位置. */
+    private static int tierEnd(Subscription[] subscriptions, int start, int end) {
+        int priority = subscriptions[start].subscriberMethod.priority;
+        int i = start + 1;
+        while (i < end && subscriptions[i].subscriberMethod.priority == priority) {
+            i ++;
+        }
+        return i;
+    }
+
+    /**
+     * 同一优先级的订阅:需要入队的先在发布线程上依次入队,在发布线程上直接执行的订阅函数交给ParallelFanOut并行执行.
+     * @return 订阅函数取消了事件分发时返回true
+     */
+    private boolean postTierInParallel(Object event, PostingThreadState postingState,
+                                       Subscription[] subscriptions, int start, int end) {
+        Subscription[] direct = new Subscription[end - start];
+        int count = 0;
+        for (int i = start; i < end; i ++) {
+            Subscription subscription = subscriptions[i];
+            ThreadMode threadMode = subscription.subscriberMethod.threadMode;
+            if (threadMode == ThreadMode.POSTING
+                    || (threadMode == ThreadMode.BACKGROUND && !postingState.isMainThread)) {
+                direct[count ++] = subscription;
+            } else if (postToSubscription(event, postingState, subscription)) {
+                return true;
+            }
+        }
+        if (count == 0) {
+            return false;
+        }
+        return parallelFanOut.invokeAll(direct, count, event);
+    }
+
+    /**
+     * 在并行执行的线程上调用订阅函数,期间该线程的分发状态指向当前事件,
+     * 以便订阅函数取消事件分发.
+     * @return 订阅函数取消了事件分发时返回true
+     */
+    boolean invokeSubscriberInFanOut(Subscription subscription, Object event) {
+        PostingThreadState postingState = currentPostingThreadState.get();
+        Object previousEvent = postingState.event;
+        Subscription previousSubscription = postingState.subscription;
+        boolean previousCanceled = postingState.canceled;
+        postingState.event = event;
+        postingState.subscription = subscription;
+        postingState.canceled = false;
+        try {
+            invokeSubscriber(subscription, event);
+            return postingState.canceled;
+        } finally {
+            postingState.event = previousEvent;
+            postingState.subscription = previousSubscription;
+            postingState.canceled = previousCanceled;
         }
-        return false;
     }
 
     /**
@@ -331,24 +996,87 @@ public class EventBus {
     void invokeSubscriber(PendingPost pendingPost) {
         Object event = pendingPost.event;
         Subscription subscription = pendingPost.subscription;
-        PendingPost.releasePendingPost(pendingPost);
+        pendingPostPool.release(pendingPost);
+        if (event instanceof EventConflater.Slot) {
+            // 合并投递,取出该键最新的事件.
+            event = ((EventConflater.Slot) event).take();
+            if (event == null) {
+                return;
+            }
+        }
         if (subscription.active) {
-            invokeSubscriber(subscription, event);
+            invokeSubscriber(subscription, event, true);
         }
     }
 
-    /** 通过反射来执行订阅函数. */
+    /** 通过订阅函数预先构建的调用器来执行订阅函数. */
     void invokeSubscriber(Subscription subscription, Object event) {
+        invokeSubscriber(subscription, event, false);
+    }
+
+    /** @param queued 是否由Poster从队列中取出执行 */
+    private void invokeSubscriber(Subscription subscription, Object event, boolean queued) {
+        Object subscriber = subscription.getSubscriber();
+        if (subscriber == null) {
+            // 弱引用订阅者已被回收,安排一次批量清理.
+            schedulePurge();
+            return;
+        }
+        boolean breaker = breakerCoolDownNanos != 0;
+        boolean trial = false;
+        if (breaker) {
+            int permit = subscription.health.acquire();
+            if (permit == SubscriptionHealth.REJECTED) {
+                // 熔断期间丢弃投递给该订阅的事件,不影响其他订阅.
+                return;
+            }
+            trial = permit == SubscriptionHealth.TRIAL;
+        }
+        LatencyHistogram invokeTime = subscription.invokeTime;
+        boolean sampled = slowSubscriberDetector != null
+                && slowSubscriberDetector.shouldSample(subscription);
+        boolean timed = invokeTime != null || sampled || (breaker && breakerSlowNanos != 0);
+        long started = timed ? System.nanoTime() : 0;
+        boolean failed = false;
         try {
-            subscription.subscriberMethod.method.invoke(subscription.subscriber, event);
+            subscription.subscriberMethod.invoker.invoke(subscriber, event);
         } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            throw new IllegalStateException("Unexpected exception", e);
+            failed = true;
+            if (breaker) {
+                recordFailure(subscription, trial);
+            }
+            handleSubscriberException(subscription, event, e.getCause());
+        } finally {
+            long duration = timed ? System.nanoTime() - started : 0;
+            if (timed) {
+                if (invokeTime != null) {
+                    invokeTime.record(duration);
+                }
+                if (sampled) {
+                    slowSubscriberDetector.check(subscription, subscriber, event, queued, duration);
+                }
+            }
+            if (breaker && !failed) {
+                recordSuccess(subscription, duration, trial);
+            }
         }
     }
 
     private void postToSubscription(Subscription subscription, Object event, boolean isMainThread) {
+        postToSubscription(subscription, event, isMainThread, null);
+    }
+
+    /**
+     * 按订阅函数的线程模型分发事件.
+     * @param postingState 当前线程的分发状态,处于批量分发时,需要排队的投递先追加到批次链表中,
+     *                     批量分发结束后统一入队.sticky事件分发时为null
+     */
+    private void postToSubscription(Subscription subscription, Object event, boolean isMainThread,
+                                    PostingThreadState postingState) {
+        PostBatch batch = postingState != null ? postingState.batch : null;
+        boolean nonBlocking = postingState != null && postingState.nonBlocking;
+        boolean accepted = true;
+        Object payload = null;
         switch (subscription.subscriberMethod.threadMode) {
             case POSTING:
                 invokeSubscriber(subscription, event);
@@ -356,58 +1084,186 @@ public class EventBus {
             case MAIN:
                 if (isMainThread) {
                     invokeSubscriber(subscription, event);
-                } else {
-                    mainThreadPoster.enqueue(subscription, event);
+                } else if ((payload = queuedPayload(subscription, event)) != null) {
+                    // payload为null时事件已合并到尚未投递的事件中,无需入队.
+                    if (batch != null) {
+                        batch.mainChain.append(pendingPostPool.obtain(subscription, payload));
+                    } else {
+                        accepted = mainThreadPoster.enqueue(subscription, payload, nonBlocking);
+                    }
                 }
                 break;
             case BACKGROUND:
-                if (isMainThread) {
-                    backgroundPoster.enqueue(subscription, event);
-                } else {
+                if (!isMainThread) {
                     invokeSubscriber(subscription, event);
+                } else if ((payload = queuedPayload(subscription, event)) != null) {
+                    // payload为null时事件已合并到尚未投递的事件中,无需入队.
+                    if (batch != null) {
+                        batch.backgroundChain.append(pendingPostPool.obtain(subscription, payload));
+                    } else {
+                        accepted = backgroundPoster.enqueue(subscription, payload, nonBlocking);
+                    }
                 }
                 break;
             case ASYNC:
-                asyncPoster.enqueue(subscription, event);
+                if (batch != null) {
+                    batch.asyncChain.append(pendingPostPool.obtain(subscription, event));
+                } else {
+                    accepted = asyncPoster.enqueue(subscription, event, nonBlocking);
+                }
+                break;
+            case PARTITIONED:
+                // 无论在哪个线程发布都需要入队,才能保证同一个键的事件顺序.
+                accepted = partitionedPoster.enqueue(subscription, event, nonBlocking);
                 break;
             default:
                 throw new IllegalStateException("Unknown thread mode: " +
                         subscription.subscriberMethod.threadMode);
         }
+        // 入队被拒绝时,Poster队列已经通过PendingPostPool.discard清空了合并投递的Slot.
+        if (!accepted && postingState != null) {
+            postingState.rejected = true;
+        }
+    }
+
+    /** 合并投递的订阅函数将事件放入其键对应的Slot,返回需要入队的内容,事件已被合并时返回null. */
+    private static Object queuedPayload(Subscription subscription, Object event) {
+        EventConflater conflater = subscription.conflater;
+        return conflater != null ? conflater.offer(event) : event;
+    }
+
+    /** 在线程池中执行一次清理,已经安排过且尚未完成时不重复安排. */
+    private void schedulePurge() {
+        if (purgeScheduled.compareAndSet(false, true)) {
+            executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        synchronized (EventBus.this) {
+                            purgeCollectedSubscribers();
+                        }
+                    } finally {
+                        purgeScheduled.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    /** 将已被回收的弱引用订阅者从订阅快照中批量移除,需要持有注册锁. */
+    private void purgeCollectedSubscribers() {
+        Reference<?> reference;
+        while ((reference = collectedSubscribers.poll()) != null) {
+            WeakSubscriber weakSubscriber = (WeakSubscriber) reference;
+            for (Class<?> eventType : weakSubscriber.eventTypes) {
+                unsubscribeByEventType(weakSubscriber, eventType, null);
+            }
+        }
     }
 
     /** 取消订阅. */
     public synchronized void unregister(Object subscriber) {
+        purgeCollectedSubscribers();
         // 获取该订阅者所有的订阅事件类类型集合.
         List<Class<?>> subscribedTypes = typesBySubscriber.get(subscriber);
+        WeakSubscriber weakSubscriber = weakSubscribers.remove(subscriber);
         if (subscribedTypes != null) {
+            Object key = keysBySubscriber.remove(subscriber);
             for (Class<?> eventType : subscribedTypes) {
-                unsubscribeByEventType(subscriber, eventType);
+                unsubscribeByEventType(subscriber, eventType, key);
             }
             // 从typesBySubscriber删除该<订阅者对象,订阅事件类类型集合>
             typesBySubscriber.remove(subscriber);
-        } else {
+        }
+        if (weakSubscriber != null) {
+            for (Class<?> eventType : weakSubscriber.eventTypes) {
+                unsubscribeByEventType(weakSubscriber, eventType, null);
+            }
+            // 已经注销,之后被回收时不需要再清理.
+            weakSubscriber.clear();
+        }
+        if (subscribedTypes == null && weakSubscriber == null) {
             Log.e("EventBus", "Subscriber to unregister was not registered before: "
                     + subscriber.getClass());
         }
     }
 
-    /** 从订阅事件对应的订阅者集合中删除取消注册的订阅者. */
-    private void unsubscribeByEventType(Object subscriber, Class<?> eventType) {
-        // 获取订阅事件对应的订阅者信息集合.
-        List<Subscription> subscriptions = subscriptionsByEventType.get(eventType);
-        if (subscriptions != null) {
-            int size = subscriptions.size();
-            for (int i = 0; i < size; i ++) {
-                Subscription subscription = subscriptions.get(i);
-                // 从订阅者集合中删除特定的订阅者.
-                if (subscription.subscriber == subscriber) {
-                    subscription.active = false;
-                    subscriptions.remove(i);
-                    i --;
-                    size --;
+    /**
+     * 从订阅事件对应的订阅者集合中删除取消注册的订阅者.
+     * @param owner 普通注册时为订阅者对象,弱引用注册时为其WeakSubscriber
+     * @param key 按键注册时的键,普通注册时为null
+     */
+    private void unsubscribeByEventType(Object owner, Class<?> eventType, Object key) {
+        if (key != null) {
+            KeyedSubscriptions keyedSubscriptions = keyedSubscriptionsByEventType.get(eventType);
+            if (keyedSubscriptions == null) {
+                return;
+            }
+            Subscription[] subscriptions = keyedSubscriptions.get(key);
+            Subscription[] newSubscriptions = removeOwnedBy(subscriptions, owner);
+            if (newSubscriptions == subscriptions) {
+                return;
+            }
+            if (newSubscriptions.length == 0) {
+                keyedSubscriptions.remove(key);
+                if (keyedSubscriptions.isEmpty()) {
+                    keyedSubscriptionsByEventType.remove(eventType);
                 }
+            } else {
+                keyedSubscriptions.put(key, newSubscriptions);
+            }
+            registryEpoch ++;
+            return;
+        }
+        // 获取订阅事件对应的订阅者快照数组.
+        Subscription[] subscriptions = subscriptionsByEventType.get(eventType);
+        Subscription[] newSubscriptions = removeOwnedBy(subscriptions, owner);
+        if (newSubscriptions == subscriptions) {
+            return;
+        }
+        if (newSubscriptions.length == 0) {
+            subscriptionsByEventType.remove(eventType);
+        } else {
+            subscriptionsByEventType.put(eventType, newSubscriptions);
+        }
+        registryEpoch ++;
+    }
+
+    /**
+     * 返回删除owner的订阅后的新快照数组,并将被删除的订阅标记为不活跃.
+     * 没有owner的订阅时返回原数组.
+     */
+    private static Subscription[] removeOwnedBy(Subscription[] subscriptions, Object owner) {
+        if (subscriptions == null) {
+            return null;
+        }
+        int size = subscriptions.length;
+        Subscription[] remaining = new Subscription[size];
+        int count = 0;
+        for (Subscription subscription : subscriptions) {
+            // 从订阅者集合中删除特定的订阅者.
+            if (subscription.isOwnedBy(owner)) {
+                subscription.active = false;
+            } else {
+                remaining[count ++] = subscription;
             }
         }
+        if (count == size) {
+            return subscriptions;
+        }
+        Subscription[] newSubscriptions = new Subscription[count];
+        System.arraycopy(remaining, 0, newSubscriptions, 0, count);
+        return newSubscriptions;
+    }
+
+    /** EventTap及其观察的事件类型. */
+    private static final class TapRegistration {
+        final Class<?> eventType;
+        final EventTap tap;
+
+        TapRegistration(Class<?> eventType, EventTap tap) {
+            this.eventType = eventType;
+            this.tap = tap;
+        }
     }
 }
@@ -2,10 +2,12 @@ package org.greenrobot.eventbus;
 
 import org.greenrobot.eventbus.meta.SubscriberInfoIndex;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 构建器模式
@@ -40,10 +42,79 @@ public class EventBusBuilder {
     /** 线程池. */
     ExecutorService executorService = DEFAULT_EXECUTOR_SERVICE;
 
+    /** 是否将ASYNC订阅函数及BACKGROUND消费循环运行在虚拟线程上,运行时不支持时回退到executorService. */
+    boolean virtualThreadsForAsync;
+    boolean virtualThreadsForBackground;
+
+    /** BACKGROUND消费线程在队列为空时的等待策略. */
+    WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+
+    /** 各个Poster队列的容量及队列已满时的处理策略,默认不限制容量. */
+    int mainQueueCapacity = PendingPostQueue.UNBOUNDED;
+    OverflowPolicy mainOverflowPolicy = OverflowPolicy.BLOCK;
+    int backgroundQueueCapacity = PendingPostQueue.UNBOUNDED;
+    OverflowPolicy backgroundOverflowPolicy = OverflowPolicy.BLOCK;
+    int asyncQueueCapacity = PendingPostQueue.UNBOUNDED;
+    OverflowPolicy asyncOverflowPolicy = OverflowPolicy.BLOCK;
+
+    int partitionedQueueCapacity = PendingPostQueue.UNBOUNDED;
+    OverflowPolicy partitionedOverflowPolicy = OverflowPolicy.BLOCK;
+
+    /** 同时执行ASYNC订阅函数的消费任务数量上限,默认不限制,与每个事件一个任务时的并发度相同. */
+    int maxAsyncWorkers = Integer.MAX_VALUE;
+
+    /** 同一订阅两次异常报告(日志和SubscriberExceptionEvent)之间的最短间隔. */
+    long exceptionReportIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+
+    /** 熔断配置,冷却时间为0表示未开启. */
+    long breakerCoolDownNanos;
+    int breakerMaxFailures = Integer.MAX_VALUE;
+    long breakerSlowNanos;
+    int breakerMaxSlow = Integer.MAX_VALUE;
+
+    /** 主线程Handler每次处理消息的最长时间,超过后让出主线程并重新发送消息. */
+    int maxMillisInsideHandleMessage = 10;
+
+    /** 按ThreadMode.ordinal()存放的慢订阅函数阈值,为null时不检测. */
+    long[] slowSubscriberThresholdNanos;
+    int slowSubscriberSampleRate = 1;
+    SlowSubscriberListener slowSubscriberListener;
+
+    /** 是否开启内部统计. */
+    boolean metrics;
+
+    /** sticky事件的持久化文件及编码方式,为null时不持久化. */
+    File stickyEventFile;
+    EventCodec stickyEventCodec;
+
+    /** MAIN和BACKGROUND队列按优先级分级时,较低级别被连续跳过的次数上限,0表示不分级. */
+    int priorityQueuingStarvationLimit;
+
+    /** 同一优先级的订阅函数数量达到该值时并行执行,0表示不开启. */
+    int parallelFanOutThreshold;
+
+    /** 并行执行时参与的线程数量,包括发布线程. */
+    int parallelFanOutParallelism = Runtime.getRuntime().availableProcessors();
+
+    /** PARTITIONED线程模型的并行通道数量. */
+    int partitionLanes = Runtime.getRuntime().availableProcessors();
+
+    /** 是否复用PendingPost对象. */
+    boolean pendingPostPooling = true;
+
+    /** 每个线程本地缓存的PendingPost数量. */
+    int pendingPostLocalCacheSize = 64;
+
+    /** 所有线程共享的PendingPost缓冲池大小. */
+    int pendingPostPoolSize = 10000;
+
     /** 从命名来看,含义是不遍历的Method响应函数集合,但是没啥软用,EventBus3.0版本也没有遍历这个集合. */
     List<Class<?>> skipMethodVerificationForClasses;
     List<SubscriberInfoIndex> subscriberInfoIndexes;
 
+    /** 创建EventBus后在线程池中提前查找订阅函数的订阅者类. */
+    List<Class<?>> preloadClasses;
+
     EventBusBuilder() {
     }
 
@@ -96,6 +167,286 @@ public class EventBusBuilder {
         return this;
     }
 
+    /**
+     * Runs each ASYNC delivery and, if requested, the BACKGROUND/PARTITIONED drain loops on virtual
+     * threads (default: false). Useful for subscribers that block on I/O, where a cached platform
+     * pool would spawn a thread per concurrent event. On runtimes without virtual threads (e.g.
+     * Android) the executor given by {@link #executorService(ExecutorService)} is used instead.
+     */
+    public EventBusBuilder virtualThreads(boolean forAsync, boolean forBackground) {
+        this.virtualThreadsForAsync = forAsync;
+        this.virtualThreadsForBackground = forBackground;
+        return this;
+    }
+
+    /** Whether the current runtime supports virtual threads. */
+    public static boolean isVirtualThreadsSupported() {
+        return VirtualThreads.isSupported();
+    }
+
+    /**
+     * Wait strategy of the background delivery thread while its queue is empty (default: BLOCKING).
+     * Spinning strategies lower wake-up latency at the cost of CPU time.
+     */
+    public EventBusBuilder waitStrategy(WaitStrategy waitStrategy) {
+        if (waitStrategy == null) {
+            throw new NullPointerException("waitStrategy must not be null");
+        }
+        this.waitStrategy = waitStrategy;
+        return this;
+    }
+
+    /**
+     * Limits the number of events queued for delivery in the given thread mode (MAIN, BACKGROUND,
+     * ASYNC, or PARTITIONED per lane) and selects what happens when the queue is full
+     * (default: unbounded).
+     * Note: BLOCK waits for the subscribers of that thread mode to catch up, so do not post
+     * events that would block from those subscribers.
+     */
+    public EventBusBuilder queueCapacity(ThreadMode threadMode, int capacity,
+                                         OverflowPolicy overflowPolicy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        if (overflowPolicy == null) {
+            throw new NullPointerException("overflowPolicy must not be null");
+        }
+        switch (threadMode) {
+            case MAIN:
+                mainQueueCapacity = capacity;
+                mainOverflowPolicy = overflowPolicy;
+                break;
+            case BACKGROUND:
+                backgroundQueueCapacity = capacity;
+                backgroundOverflowPolicy = overflowPolicy;
+                break;
+            case ASYNC:
+                asyncQueueCapacity = capacity;
+                asyncOverflowPolicy = overflowPolicy;
+                break;
+            case PARTITIONED:
+                partitionedQueueCapacity = capacity;
+                partitionedOverflowPolicy = overflowPolicy;
+                break;
+            default:
+                throw new IllegalArgumentException("Thread mode " + threadMode +
+                        " does not queue events");
+        }
+        return this;
+    }
+
+    /**
+     * Caps the number of worker tasks delivering ASYNC events concurrently (default: no cap). Each
+     * worker drains queued events until the queue is empty; more workers are started while the
+     * backlog exceeds the number of idle workers, so a worker blocked in a subscriber never delays
+     * another ASYNC event unless the cap is reached. A cap bounds the threads a cached executor
+     * spawns, but ASYNC events then wait for a free worker, so leave it unset for subscribers that
+     * block for long periods or when running on virtual threads.
+     */
+    public EventBusBuilder maxAsyncWorkers(int maxAsyncWorkers) {
+        if (maxAsyncWorkers < 1) {
+            throw new IllegalArgumentException("Illegal worker count: " + maxAsyncWorkers);
+        }
+        this.maxAsyncWorkers = maxAsyncWorkers;
+        return this;
+    }
+
+    /**
+     * Minimum interval between two exception reports (log entry and
+     * {@link SubscriberExceptionEvent}) for the same subscription (default: 1 second). Failures in
+     * between are only counted and reported as {@link SubscriberExceptionEvent#suppressedCount}.
+     * Use 0 to report every failure.
+     */
+    public EventBusBuilder subscriberExceptionReportInterval(long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("Illegal interval: " + intervalMillis);
+        }
+        this.exceptionReportIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        return this;
+    }
+
+    /**
+     * Suspends a subscription after {@code maxConsecutiveFailures} invocations in a row threw an
+     * exception (default: never). While suspended, events for that subscription are dropped. After
+     * {@code coolDownMillis} the next event is delivered as a single trial, and other events are
+     * still dropped until it completes: success resumes the subscription, another failure suspends
+     * it again right away.
+     */
+    public EventBusBuilder circuitBreaker(int maxConsecutiveFailures, long coolDownMillis) {
+        if (maxConsecutiveFailures < 1 || coolDownMillis < 1) {
+            throw new IllegalArgumentException("Illegal circuit breaker settings");
+        }
+        this.breakerMaxFailures = maxConsecutiveFailures;
+        this.breakerCoolDownNanos = TimeUnit.MILLISECONDS.toNanos(coolDownMillis);
+        return this;
+    }
+
+    /**
+     * Also suspends a subscription after {@code maxConsecutiveSlow} invocations in a row took at
+     * least {@code slowMillis} each. Requires {@link #circuitBreaker(int, long)}, which also sets
+     * the cool-down.
+     */
+    public EventBusBuilder circuitBreakerLatency(long slowMillis, int maxConsecutiveSlow) {
+        if (slowMillis < 1 || maxConsecutiveSlow < 1) {
+            throw new IllegalArgumentException("Illegal circuit breaker settings");
+        }
+        this.breakerSlowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+        this.breakerMaxSlow = maxConsecutiveSlow;
+        return this;
+    }
+
+    /**
+     * Time budget of one main-thread handler message (default: 10 ms). Once it is used up, the
+     * main-thread poster yields the looper and continues with a new message.
+     */
+    public EventBusBuilder maxMillisInsideHandleMessage(int maxMillis) {
+        if (maxMillis < 1) {
+            throw new IllegalArgumentException("Illegal time budget: " + maxMillis);
+        }
+        this.maxMillisInsideHandleMessage = maxMillis;
+        return this;
+    }
+
+    /**
+     * Reports subscribers of the given thread mode whose invocation takes at least
+     * {@code thresholdMillis} (default: not reported). Reports go to the
+     * {@link #slowSubscriberListener(SlowSubscriberListener) listener} or, without one, are posted
+     * as {@link SlowSubscriberEvent}. For MAIN subscribers, a threshold at or below
+     * {@link #maxMillisInsideHandleMessage(int)} reports frame-budget violations.
+     */
+    public EventBusBuilder slowSubscriberThreshold(ThreadMode threadMode, long thresholdMillis) {
+        if (thresholdMillis < 1) {
+            throw new IllegalArgumentException("Illegal threshold: " + thresholdMillis);
+        }
+        if (slowSubscriberThresholdNanos == null) {
+            slowSubscriberThresholdNanos = new long[ThreadMode.values().length];
+        }
+        slowSubscriberThresholdNanos[threadMode.ordinal()] =
+                TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        return this;
+    }
+
+    /**
+     * Times a random one in {@code sampleRate} invocations when checking for slow subscribers
+     * (default: 1, every invocation). The rate is rounded up to a power of two.
+     */
+    public EventBusBuilder slowSubscriberSampling(int sampleRate) {
+        if (sampleRate < 1 || sampleRate > 1 << 30) {
+            throw new IllegalArgumentException("Illegal sample rate: " + sampleRate);
+        }
+        int rate = 1;
+        while (rate < sampleRate) {
+            rate <<= 1;
+        }
+        this.slowSubscriberSampleRate = rate;
+        return this;
+    }
+
+    /** Receives slow-subscriber reports instead of posting {@link SlowSubscriberEvent}s. */
+    public EventBusBuilder slowSubscriberListener(SlowSubscriberListener listener) {
+        this.slowSubscriberListener = listener;
+        return this;
+    }
+
+    /**
+     * Records dispatch metrics (default: false): posts per event type, invoke time per subscriber
+     * method, queue depth, queue wait and executor hand-off time per poster, and PendingPost pool
+     * hit rate. Recording uses striped counters and fixed histograms and does not allocate once a
+     * type or method has been seen. Read them with {@link EventBus#getMetrics()}.
+     */
+    public EventBusBuilder metrics(boolean metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Persists sticky events to the given file so they survive a process restart (default: in
+     * memory only). Every postSticky/removeStickyEvent appends a record to a memory-mapped log,
+     * which is compacted when it fills up. A new EventBus reads the file in the background and
+     * waits for it only when sticky events are first accessed. Events the codec does not handle
+     * (it returns null from encode) are kept in memory only.
+     */
+    public EventBusBuilder persistStickyEvents(File file, EventCodec codec) {
+        if (file == null || codec == null) {
+            throw new NullPointerException("File and codec must not be null");
+        }
+        this.stickyEventFile = file;
+        this.stickyEventCodec = codec;
+        return this;
+    }
+
+    /**
+     * Makes queued MAIN and BACKGROUND deliveries respect subscriber priority (default: FIFO).
+     * Pending events are kept in three levels (priority above, equal to, and below 0) and the
+     * highest non-empty level is served first. A lower level that has been passed over
+     * {@code starvationLimit} times in a row is served next, so it cannot starve under load.
+     * A queue capacity set via {@link #queueCapacity} applies to each level.
+     */
+    public EventBusBuilder priorityQueuing(int starvationLimit) {
+        if (starvationLimit < 1) {
+            throw new IllegalArgumentException("Illegal starvation limit: " + starvationLimit);
+        }
+        this.priorityQueuingStarvationLimit = starvationLimit;
+        return this;
+    }
+
+    /**
+     * Invokes subscribers of the same priority in parallel once there are at least
+     * {@code threshold} of them (default: disabled). Applies to POSTING subscribers, and to
+     * BACKGROUND subscribers when posting from a background thread. Work is spread over the
+     * configured executor service and the posting thread, and {@code post} returns only after
+     * all of them have run. Priority tiers still run one after another; order within a tier is
+     * not defined.
+     *
+     * @param parallelism number of threads taking part, including the posting thread
+     */
+    public EventBusBuilder parallelFanOut(int threshold, int parallelism) {
+        if (threshold < 2) {
+            throw new IllegalArgumentException("Illegal fan-out threshold: " + threshold);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Illegal parallelism: " + parallelism);
+        }
+        this.parallelFanOutThreshold = threshold;
+        this.parallelFanOutParallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Number of lanes used by {@link ThreadMode#PARTITIONED} subscribers (default: number of
+     * available processors). Events with the same key always run on the same lane.
+     */
+    public EventBusBuilder partitionLanes(int partitionLanes) {
+        if (partitionLanes < 1) {
+            throw new IllegalArgumentException("Illegal lane count: " + partitionLanes);
+        }
+        this.partitionLanes = partitionLanes;
+        return this;
+    }
+
+    /**
+     * Reuses PendingPost objects for queued deliveries (default: true). Turn it off when the VM's
+     * allocation and escape analysis beat pooling.
+     */
+    public EventBusBuilder pendingPostPooling(boolean pendingPostPooling) {
+        this.pendingPostPooling = pendingPostPooling;
+        return this;
+    }
+
+    /**
+     * Sizes the PendingPost pool: a lock-free cache per thread (default: 64) backed by a shared
+     * overflow pool (default: 10000).
+     */
+    public EventBusBuilder pendingPostPoolSize(int localCacheSize, int sharedPoolSize) {
+        if (localCacheSize < 1 || sharedPoolSize < 0) {
+            throw new IllegalArgumentException("Illegal pool size: " + localCacheSize + "/" +
+                    sharedPoolSize);
+        }
+        this.pendingPostLocalCacheSize = localCacheSize;
+        this.pendingPostPoolSize = sharedPoolSize;
+        return this;
+    }
+
     public EventBusBuilder skipMethodVerificationFor(Class<?> clazz) {
         if (skipMethodVerificationForClasses == null) {
             skipMethodVerificationForClasses = new ArrayList<>();
@@ -129,6 +480,23 @@ public class EventBusBuilder {
         return this;
     }
 
+    /**
+     * Looks up the subscriber methods of the given classes in the background as soon as the EventBus is built,
+     * see {@link EventBus#preload(Class[])}.
+     */
+    public EventBusBuilder preload(Class<?>... subscriberClasses) {
+        if (preloadClasses == null) {
+            preloadClasses = new ArrayList<>();
+        }
+        for (Class<?> subscriberClass : subscriberClasses) {
+            if (subscriberClass == null) {
+                throw new NullPointerException("Subscriber class must not be null");
+            }
+            preloadClasses.add(subscriberClass);
+        }
+        return this;
+    }
+
     /**
      * Installs the default EventBus returned by {@link EventBus#getDefault()}
      * using this builder's values.
@@ -0,0 +1,147 @@
+package org.greenrobot.eventbus;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * EventBus统计信息的快照,由{@link EventBus#getMetrics()}获取.
+ * 各项计数从EventBus创建开始累计,快照创建之后不再变化.
+ */
+public final class EventBusMetrics {
+    private final Map<Class<?>, Long> postsByEventType;
+    private final Map<String, Histogram> invokeTimeBySubscriberMethod;
+    private final Map<ThreadMode, PosterStats> posterStats;
+    private final long pendingPostPoolHits;
+    private final long pendingPostPoolMisses;
+
+    EventBusMetrics(Map<Class<?>, Long> postsByEventType,
+                    Map<String, Histogram> invokeTimeBySubscriberMethod,
+                    Map<ThreadMode, PosterStats> posterStats,
+                    long pendingPostPoolHits, long pendingPostPoolMisses) {
+        this.postsByEventType = Collections.unmodifiableMap(postsByEventType);
+        this.invokeTimeBySubscriberMethod = Collections.unmodifiableMap(invokeTimeBySubscriberMethod);
+        this.posterStats = Collections.unmodifiableMap(posterStats);
+        this.pendingPostPoolHits = pendingPostPoolHits;
+        this.pendingPostPoolMisses = pendingPostPoolMisses;
+    }
+
+    /** 每个事件类被发布的次数. */
+    public Map<Class<?>, Long> getPostsByEventType() {
+        return postsByEventType;
+    }
+
+    /** 每个订阅函数的执行耗时,键的格式为"类名#方法名(事件类名". */
+    public Map<String, Histogram> getInvokeTimeBySubscriberMethod() {
+        return invokeTimeBySubscriberMethod;
+    }
+
+    /** MAIN,BACKGROUND,ASYNC和PARTITIONED各个Poster的队列统计. */
+    public Map<ThreadMode, PosterStats> getPosterStats() {
+        return posterStats;
+    }
+
+    public long getPendingPostPoolHits() {
+        return pendingPostPoolHits;
+    }
+
+    public long getPendingPostPoolMisses() {
+        return pendingPostPoolMisses;
+    }
+
+    /** PendingPost缓冲池的命中率,还没有获取过PendingPost时为0. */
+    public double getPendingPostPoolHitRate() {
+        long total = pendingPostPoolHits + pendingPostPoolMisses;
+        return total == 0 ? 0 : (double) pendingPostPoolHits / total;
+    }
+
+    /** 一个Poster的统计. */
+    public static final class PosterStats {
+        private final long enqueued;
+        private final long queueDepth;
+        private final Histogram queueWait;
+        private final Histogram handOff;
+
+        PosterStats(long enqueued, long queueDepth, Histogram queueWait, Histogram handOff) {
+            this.enqueued = enqueued;
+            this.queueDepth = queueDepth;
+            this.queueWait = queueWait;
+            this.handOff = handOff;
+        }
+
+        /** 累计入队的数量. */
+        public long getEnqueued() {
+            return enqueued;
+        }
+
+        /** 快照时队列中尚未消费的数量(近似值,不包括被溢出策略丢弃的). */
+        public long getQueueDepth() {
+            return queueDepth;
+        }
+
+        /** 从入队到出队的等待时间. */
+        public Histogram getQueueWait() {
+            return queueWait;
+        }
+
+        /** 从提交消费任务(或发送Handler消息)到开始消费的交接时间. */
+        public Histogram getHandOff() {
+            return handOff;
+        }
+    }
+
+    /**
+     * 耗时直方图,单位为纳秒.
+     * 第i个区间统计耗时在[2^(i-1), 2^i)纳秒之间的次数,第0个区间统计耗时为0的次数.
+     */
+    public static final class Histogram {
+        private final long count;
+        private final long totalNanos;
+        private final long[] buckets;
+
+        Histogram(long count, long totalNanos, long[] buckets) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.buckets = buckets;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) totalNanos / count;
+        }
+
+        /** 各个区间的次数,返回副本. */
+        public long[] getBuckets() {
+            return buckets.clone();
+        }
+
+        /**
+         * 返回不小于指定比例的记录所在区间的上界,例如0.99对应P99.
+         * 由于区间按2的幂划分,结果最多比实际值大一倍.
+         */
+        public long getPercentileNanos(double fraction) {
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i ++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE : (1L << i) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.greenrobot.eventbus;
+
+import java.io.IOException;
+
+/**
+ * 事件的序列化方式,用于将事件保存到文件或发送到其他进程.
+ */
+public interface EventCodec {
+    /**
+     * @return 编码后的数据;返回null表示不处理该类事件,此类事件不会被保存或发送
+     */
+    byte[] encode(Object event) throws IOException;
+
+    /** 将encode得到的数据还原为eventClass的实例. */
+    Object decode(Class<?> eventClass, byte[] data) throws IOException;
+}
@@ -0,0 +1,76 @@
+package org.greenrobot.eventbus;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 订阅函数的合并投递状态,只在@Subscribe(conflate = true)时创建.
+ * 同一个键只对应一个待投递的Slot,尚未投递时到来的新事件直接替换Slot中的旧事件,
+ * 因此队列中属于该订阅函数的PendingPost数量不会超过不同键的数量.
+ * 每个键同一时刻最多只有一个Slot在队列中;但ASYNC等多个消费者并发投递时,刚从Slot中取出的事件
+ * 与之后入队的新Slot中的事件仍可能并发执行,只有单消费者的Poster保证按到达顺序投递.
+ */
+final class EventConflater {
+    /** 没有键的事件共用的键. */
+    private static final Object NO_KEY = new Object();
+
+    /** 已取出并从slots中删除的Slot的标记,之后到来的事件需要使用新的Slot. */
+    private static final Object RETIRED = new Object();
+
+    private final ConcurrentHashMap<Object, Slot> slots = new ConcurrentHashMap<>();
+
+    /**
+     * 记录最新的事件.
+     * @return 需要入队的Slot;如果该键已经有待投递的Slot,事件已被合并进去,返回null
+     */
+    Slot offer(Object event) {
+        Object key = null;
+        if (event instanceof KeyedEvent) {
+            key = ((KeyedEvent) event).getEventKey();
+        }
+        if (key == null) {
+            key = NO_KEY;
+        }
+        while (true) {
+            Slot slot = slots.get(key);
+            if (slot == null) {
+                Slot newSlot = new Slot(this, key);
+                slot = slots.putIfAbsent(key, newSlot);
+                if (slot == null) {
+                    slot = newSlot;
+                }
+            }
+            Object previous = slot.latest.get();
+            if (previous == RETIRED) {
+                // 该Slot已被取出并删除,重新获取该键的Slot.
+                continue;
+            }
+            if (slot.latest.compareAndSet(previous, event)) {
+                return previous == null ? slot : null;
+            }
+        }
+    }
+
+    /** 一个键对应的最新待投递事件,作为PendingPost的event入队. */
+    static final class Slot {
+        private final EventConflater conflater;
+        private final Object key;
+        final AtomicReference<Object> latest = new AtomicReference<>();
+
+        Slot(EventConflater conflater, Object key) {
+            this.conflater = conflater;
+            this.key = key;
+        }
+
+        /**
+         * 取出最新的事件并废弃Slot.先从slots中删除再标记为RETIRED,
+         * 仍持有该Slot的offer看到标记后会改用新的Slot,因此已删除的Slot不会再次入队,同一个键也不会有两个Slot.
+         * @return 事件,Slot已被取出时返回null
+         */
+        Object take() {
+            conflater.slots.remove(key, this);
+            Object event = latest.getAndSet(RETIRED);
+            return event != RETIRED ? event : null;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.greenrobot.eventbus;
+
+/**
+ * 观察post到EventBus的事件,通过EventBus.addTap按事件类型注册,用于在EventBus之上构建的扩展,
+ * 例如跨进程转发和事件日志.
+ * 与订阅者不同,EventTap不参与订阅函数的分发:不会被取消分发影响,也不计入是否有订阅者,不影响NoSubscriberEvent;
+ * 并且总是按事件的实际类型匹配,与eventInheritance的设置无关.
+ * 在发布线程上、订阅函数执行之前回调,抛出的异常传播给post的调用方,实现应当尽快返回.
+ */
+public interface EventTap {
+    void onEvent(Object event);
+}
@@ -7,55 +7,118 @@ import android.os.Message;
 import android.os.SystemClock;
 import android.util.Log;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 public class HandlerPoster extends Handler {
 
-    private final PendingPostQueue queue;
+    private final PostQueue queue;
     private final int maxMillisInsideHandleMessage;
     private final EventBus eventBus;
     /** 用于表示当前队列中是否有正在发送的任务. */
-    private boolean handlerActive;
+    private final AtomicBoolean handlerActive = new AtomicBoolean();
+
+    /** 队列统计,未开启统计时为null. */
+    private final PosterMetrics metrics;
 
-    HandlerPoster(EventBus eventBus, Looper looper, int maxMillisInsideHandleMessage) {
+    HandlerPoster(EventBus eventBus, Looper looper, int maxMillisInsideHandleMessage,
+                  PostQueue queue, PosterMetrics metrics) {
         super(looper);
+        this.metrics = metrics;
         this.eventBus = eventBus;
         this.maxMillisInsideHandleMessage = maxMillisInsideHandleMessage;
-        queue = new PendingPostQueue();
+        this.queue = queue;
+        if (metrics != null) {
+            metrics.track(queue);
+        }
     }
 
     /**
      * 将订阅者和订阅者事件组成PendingPost并入队列.
      * @param subscription 订阅者
      * @param event 订阅者事件
+     * @param nonBlocking 队列已满时是否直接拒绝而不阻塞或抛出异常
+     * @return 队列已满且按溢出策略拒绝时返回false
      */
-    void enqueue(Subscription subscription, Object event) {
-        PendingPost pendingPost = PendingPost.obtainPendingPost(subscription, event);
-        synchronized (this) {
-            queue.enqueue(pendingPost);
-            if (!handlerActive) {
-                // 如果现在队列中没有正在执行的消息,则发送一条空消息,让当前handler开始轮询执行消息.
-                handlerActive = true;
-                if (!sendMessage(obtainMessage())) {
-                    throw new EventBusException("Could not send handler message");
+    boolean enqueue(Subscription subscription, Object event, boolean nonBlocking) {
+        PendingPost pendingPost = eventBus.getPendingPostPool().obtain(subscription, event);
+        if (!queue.enqueue(pendingPost, nonBlocking)) {
+            return false;
+        }
+        if (metrics != null) {
+            metrics.onEnqueued(1);
+        }
+        scheduleIfInactive();
+        return true;
+    }
+
+    /** 将一批PendingPost入队,没有容量限制时整体入队,最多发送一条消息. */
+    void enqueueAll(PendingPost first, PendingPost last, int count) {
+        if (queue.size() >= 0) {
+            enqueueEach(first, last);
+            return;
+        }
+        queue.enqueueAll(first, last);
+        if (metrics != null) {
+            metrics.onEnqueued(count);
+        }
+        scheduleIfInactive();
+    }
+
+    /** 有容量限制时逐个入队,每个入队后检查是否需要发送消息,见BackgroundPoster.enqueueEach. */
+    private void enqueueEach(PendingPost first, PendingPost last) {
+        PendingPost pendingPost = first;
+        try {
+            while (pendingPost != null) {
+                PendingPost current = pendingPost;
+                pendingPost = current == last ? null : current.next;
+                if (queue.enqueue(current, false)) {
+                    if (metrics != null) {
+                        metrics.onEnqueued(1);
+                    }
+                    scheduleIfInactive();
                 }
             }
+        } finally {
+            if (pendingPost != null) {
+                eventBus.getPendingPostPool().discardAll(pendingPost, last);
+            }
+        }
+    }
+
+    private void scheduleIfInactive() {
+        if (handlerActive.compareAndSet(false, true)) {
+            // 如果现在队列中没有正在执行的消息,则发送一条空消息,让当前handler开始轮询执行消息.
+            if (metrics != null) {
+                metrics.onScheduled();
+            }
+            if (!sendMessage(obtainMessage())) {
+                throw new EventBusException("Could not send handler message");
+            }
         }
     }
 
     @Override
     public void handleMessage(Message msg) {
+        boolean active = true;
         boolean rescheduled = false;
+        if (metrics != null) {
+            metrics.onStarted();
+        }
         try {
             long started = SystemClock.uptimeMillis();
             while (true) {
                 PendingPost pendingPost = queue.poll();
                 if (pendingPost == null) {
-                    synchronized (this) {
-                        pendingPost = queue.poll();
-                        if (pendingPost == null) {
-                            handlerActive = false;
-                            return;
-                        }
+                    handlerActive.set(false);
+                    // 放弃轮询之后队列中又有新事件,并且入队线程没有重新发送消息时,继续轮询.
+                    if (queue.isEmpty() || !handlerActive.compareAndSet(false, true)) {
+                        active = false;
+                        return;
                     }
+                    continue;
+                }
+                if (metrics != null) {
+                    metrics.onDequeued(pendingPost);
                 }
                 eventBus.invokeSubscriber(pendingPost);
 
@@ -63,6 +126,9 @@ public class HandlerPoster extends Handler {
                 // 同时发送消息再次调度handleMessage方法.
                 long timeInMethod = SystemClock.uptimeMillis() - started;
                 if (timeInMethod >= maxMillisInsideHandleMessage) {
+                    if (metrics != null) {
+                        metrics.onScheduled();
+                    }
                     if (!sendMessage(obtainMessage())) {
                         throw new EventBusException("Could not send handler message");
                     }
@@ -71,7 +137,9 @@ public class HandlerPoster extends Handler {
                 }
             }
         } finally {
-            handlerActive = rescheduled;
+            if (active && !rescheduled) {
+                handlerActive.set(false);
+            }
         }
     }
 }
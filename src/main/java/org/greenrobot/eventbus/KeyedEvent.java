@@ -0,0 +1,10 @@
+package org.greenrobot.eventbus;
+
+/**
+ * 携带业务键的事件,例如实体id.
+ * 合并投递时,同一订阅函数只保留每个键最新的一个待投递事件.
+ */
+public interface KeyedEvent {
+    /** 事件的业务键,返回null时视为没有键. */
+    Object getEventKey();
+}
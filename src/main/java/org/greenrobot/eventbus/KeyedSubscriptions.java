@@ -0,0 +1,11 @@
+package org.greenrobot.eventbus;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 一个事件类型的按键订阅索引Map<键, 以该键注册的订阅者快照数组>.
+ * 单独定义为非泛型的类,分发计划可以直接使用KeyedSubscriptions[]保存每个类型的索引,不需要创建泛型数组.
+ */
+final class KeyedSubscriptions extends ConcurrentHashMap<Object, Subscription[]> {
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,32 @@
+package org.greenrobot.eventbus;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 以2的幂划分区间的耗时直方图,记录时只做几次原子加法,不分配对象.
+ * 第i个区间统计耗时在[2^(i-1), 2^i)纳秒之间的次数,第0个区间统计耗时为0的次数.
+ */
+final class LatencyHistogram {
+    static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final StripedCounter count = new StripedCounter();
+    private final StripedCounter totalNanos = new StripedCounter();
+
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.getAndIncrement(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos)));
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    EventBusMetrics.Histogram snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i ++) {
+            counts[i] = buckets.get(i);
+        }
+        return new EventBusMetrics.Histogram(count.sum(), totalNanos.sum(), counts);
+    }
+}
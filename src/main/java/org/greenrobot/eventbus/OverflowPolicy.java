@@ -0,0 +1,21 @@
+package org.greenrobot.eventbus;
+
+/**
+ * 有容量限制的Poster队列已满时的处理策略.
+ */
+public enum OverflowPolicy {
+    /** 阻塞发布线程,直到队列中有空位.tryPost时直接拒绝. */
+    BLOCK,
+
+    /** 丢弃新发布的事件. */
+    DROP_NEWEST,
+
+    /**
+     * 接收新事件,丢弃队列中最早的一个事件.
+     * 最早的事件由消费者出队时丢弃,消费者停滞导致待丢弃的事件达到队列容量时,改为丢弃新发布的事件.
+     */
+    DROP_OLDEST,
+
+    /** 抛出EventBusException.tryPost时直接拒绝. */
+    FAIL
+}
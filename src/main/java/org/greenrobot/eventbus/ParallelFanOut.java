@@ -0,0 +1,131 @@
+package org.greenrobot.eventbus;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 订阅者数量很多时,将同一优先级的直接执行的订阅函数分散到线程池中并行执行.
+ * 发布线程自身也参与执行,所有订阅函数执行完毕后才返回.
+ * 订阅函数按小块领取,执行较快的线程会领取更多的块,避免个别较慢的订阅函数拖慢整体.
+ */
+final class ParallelFanOut {
+    /** 每次领取的订阅函数数量. */
+    private static final int BLOCK_SIZE = 16;
+
+    /** 同一优先级的订阅函数数量达到该值时才并行执行. */
+    final int threshold;
+
+    private final int parallelism;
+    private final EventBus eventBus;
+    private final Executor executor;
+
+    ParallelFanOut(EventBus eventBus, Executor executor, int threshold, int parallelism) {
+        this.eventBus = eventBus;
+        this.executor = executor;
+        this.threshold = threshold;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * 并行执行subscriptions中前count个订阅函数.
+     * 发布线程只等待已经领取了块的任务执行完毕,不等待尚未开始执行的任务,
+     * 因此线程池饱和或在订阅函数中嵌套并行分发时不会互相等待,之后才开始执行的任务领取不到块,直接结束.
+     * @return 有订阅函数取消了事件分发时返回true,此时尚未领取的订阅函数不再执行
+     */
+    boolean invokeAll(Subscription[] subscriptions, int count, Object event) {
+        int blocks = (count + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int helpers = Math.min(parallelism, blocks) - 1;
+        FanOutTask task = new FanOutTask(subscriptions, count, event);
+        for (int i = 0; i < helpers; i ++) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // 线程池拒绝时由发布线程和其他已启动的任务完成剩余的订阅函数.
+                break;
+            }
+        }
+        task.drain();
+        task.awaitClaimedBlocks();
+        Throwable failure = task.failure;
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        return task.canceled;
+    }
+
+    private final class FanOutTask implements Runnable {
+        final Subscription[] subscriptions;
+        final int count;
+        final Object event;
+        final AtomicInteger nextIndex = new AtomicInteger();
+
+        /** 正在领取或执行块的线程数量,包括发布线程. */
+        final AtomicInteger active = new AtomicInteger();
+        volatile boolean canceled;
+        volatile Throwable failure;
+
+        FanOutTask(Subscription[] subscriptions, int count, Object event) {
+            this.subscriptions = subscriptions;
+            this.count = count;
+            this.event = event;
+        }
+
+        @Override
+        public void run() {
+            drain();
+        }
+
+        /**
+         * 领取并执行块,直到所有块都被领取.
+         * 取消或失败后仍然领取剩余的块但不再执行,保证发布线程返回时不会再有任务领取到块.
+         * 先增加active再领取,发布线程领取不到块之后看到active为0,就说明所有已领取的块都已执行完毕.
+         */
+        void drain() {
+            while (true) {
+                active.incrementAndGet();
+                try {
+                    int from = nextIndex.getAndAdd(BLOCK_SIZE);
+                    if (from >= count) {
+                        return;
+                    }
+                    int to = Math.min(from + BLOCK_SIZE, count);
+                    for (int i = from; i < to && !canceled && failure == null; i ++) {
+                        if (eventBus.invokeSubscriberInFanOut(subscriptions[i], event)) {
+                            canceled = true;
+                        }
+                    }
+                } catch (Throwable t) {
+                    if (failure == null) {
+                        failure = t;
+                    }
+                } finally {
+                    if (active.decrementAndGet() == 0) {
+                        synchronized (this) {
+                            notifyAll();
+                        }
+                    }
+                }
+            }
+        }
+
+        /** 在发布线程上等待其他线程已经领取的块执行完毕. */
+        void awaitClaimedBlocks() {
+            boolean interrupted = false;
+            synchronized (this) {
+                while (active.get() != 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
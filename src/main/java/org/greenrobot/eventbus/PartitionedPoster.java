@@ -0,0 +1,37 @@
+package org.greenrobot.eventbus;
+
+/**
+ * PARTITIONED线程模型的投递类.
+ * 事件按KeyedEvent的键分配到固定的通道,每个通道是一个串行执行的BackgroundPoster,
+ * 因此同一个键的事件按发布顺序执行,不同键的事件在多个通道上并行执行.
+ */
+final class PartitionedPoster {
+    private final BackgroundPoster[] lanes;
+
+    /** @param metrics 所有通道共用的统计,未开启统计时为null */
+    PartitionedPoster(EventBus eventBus, PendingPostQueue[] laneQueues, PosterMetrics metrics) {
+        lanes = new BackgroundPoster[laneQueues.length];
+        for (int i = 0; i < laneQueues.length; i ++) {
+            lanes[i] = new BackgroundPoster(eventBus, laneQueues[i], metrics);
+        }
+    }
+
+    /** @return 通道队列已满且按溢出策略拒绝时返回false. */
+    boolean enqueue(Subscription subscription, Object event, boolean nonBlocking) {
+        return lanes[laneFor(event)].enqueue(subscription, event, nonBlocking);
+    }
+
+    /** 没有键的事件都分配到0号通道,彼此之间同样保持顺序. */
+    private int laneFor(Object event) {
+        if (lanes.length == 1 || !(event instanceof KeyedEvent)) {
+            return 0;
+        }
+        Object key = ((KeyedEvent) event).getEventKey();
+        if (key == null) {
+            return 0;
+        }
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return (hash & 0x7fffffff) % lanes.length;
+    }
+}
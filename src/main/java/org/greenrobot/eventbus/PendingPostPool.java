@@ -0,0 +1,150 @@
+package org.greenrobot.eventbus;
+
+/**
+ * PendingPost对象缓冲池,防止多次new PendingPost的消耗.
+ * 每个线程持有一个不加锁的本地缓存,本地缓存为空或者已满时,才批量地与共享池交换对象,
+ * 因此生产者线程获取,消费者线程释放的常见场景下,锁的竞争被摊薄到每半个本地缓存一次.
+ */
+final class PendingPostPool {
+    /** 是否启用缓冲池,关闭时每次都直接new,交给虚拟机的逃逸分析和分代回收处理. */
+    private final boolean enabled;
+
+    /** 是否在获取时记录时间,供统计队列等待时间使用. */
+    private final boolean timestamps;
+
+    /** 每个线程本地缓存的容量. */
+    private final int localCapacity;
+
+    /** 共享池,由自身加锁保护. */
+    private final PendingPost[] shared;
+    private int sharedSize;
+
+    private final ThreadLocal<LocalCache> localCaches;
+
+    /** 命中缓冲池和新建对象的次数. */
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+
+    PendingPostPool(boolean enabled, int localCapacity, int sharedCapacity, boolean timestamps) {
+        this.enabled = enabled;
+        this.timestamps = timestamps;
+        this.localCapacity = localCapacity;
+        shared = new PendingPost[enabled ? sharedCapacity : 0];
+        localCaches = new ThreadLocal<LocalCache>() {
+            @Override
+            protected LocalCache initialValue() {
+                return new LocalCache(PendingPostPool.this.localCapacity);
+            }
+        };
+    }
+
+    /** 从缓冲池中获取并构造指定的PendingPost对象,缓冲池为空时直接new一个. */
+    PendingPost obtain(Subscription subscription, Object event) {
+        PendingPost pendingPost = obtainInstance(subscription, event);
+        if (timestamps) {
+            pendingPost.enqueueNanos = System.nanoTime();
+        }
+        return pendingPost;
+    }
+
+    private PendingPost obtainInstance(Subscription subscription, Object event) {
+        if (enabled) {
+            LocalCache cache = localCaches.get();
+            if (cache.size == 0) {
+                refill(cache);
+            }
+            if (cache.size > 0) {
+                PendingPost pendingPost = cache.items[-- cache.size];
+                cache.items[cache.size] = null;
+                pendingPost.event = event;
+                pendingPost.subscription = subscription;
+                hits.increment();
+                return pendingPost;
+            }
+            misses.increment();
+        }
+        return new PendingPost(event, subscription);
+    }
+
+    /** 释放一个PendingPost对象到缓冲池中. */
+    void release(PendingPost pendingPost) {
+        pendingPost.event = null;
+        pendingPost.subscription = null;
+        pendingPost.next = null;
+        if (enabled) {
+            LocalCache cache = localCaches.get();
+            if (cache.size == cache.items.length) {
+                spill(cache);
+            }
+            if (cache.size < cache.items.length) {
+                cache.items[cache.size ++] = pendingPost;
+            }
+        }
+    }
+
+    /**
+     * 回收一个没有投递就被拒绝或丢弃的PendingPost.
+     * 合并投递的Slot只在投递时才会被取出,丢弃时必须清空,否则该键之后的事件会一直被合并而不再入队.
+     */
+    void discard(PendingPost pendingPost) {
+        Object event = pendingPost.event;
+        if (event instanceof EventConflater.Slot) {
+            ((EventConflater.Slot) event).take();
+        }
+        release(pendingPost);
+    }
+
+    /** 丢弃通过next串起来的一段链表中的所有PendingPost对象,参见discard. */
+    void discardAll(PendingPost first, PendingPost last) {
+        PendingPost pendingPost = first;
+        while (pendingPost != null) {
+            PendingPost next = pendingPost == last ? null : pendingPost.next;
+            discard(pendingPost);
+            pendingPost = next;
+        }
+    }
+
+    /** 从共享池中批量取出最多半个本地缓存的对象. */
+    private void refill(LocalCache cache) {
+        int wanted = Math.max(1, cache.items.length / 2);
+        synchronized (shared) {
+            int count = Math.min(wanted, sharedSize);
+            for (int i = 0; i < count; i ++) {
+                cache.items[cache.size ++] = shared[-- sharedSize];
+                shared[sharedSize] = null;
+            }
+        }
+    }
+
+    /** 将本地缓存中一半的对象批量放回共享池,共享池已满时丢弃,交给GC回收. */
+    private void spill(LocalCache cache) {
+        int count = Math.max(1, cache.items.length / 2);
+        synchronized (shared) {
+            for (int i = 0; i < count; i ++) {
+                PendingPost pendingPost = cache.items[-- cache.size];
+                cache.items[cache.size] = null;
+                if (sharedSize < shared.length) {
+                    shared[sharedSize ++] = pendingPost;
+                }
+            }
+        }
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    /** 线程本地缓存,只被所属线程访问. */
+    private static final class LocalCache {
+        final PendingPost[] items;
+        int size;
+
+        LocalCache(int capacity) {
+            items = new PendingPost[capacity];
+        }
+    }
+}
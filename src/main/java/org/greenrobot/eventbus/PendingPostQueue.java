@@ -1,46 +1,257 @@
 package org.greenrobot.eventbus;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 /**
- * 通过head和tail指针维护一个PendingPost的生产者-消费者模型队列.
+ * 通过head和tail指针维护一个PendingPost的多生产者-单消费者无锁队列.
+ * 生产者只通过原子交换tail入队,消费者独占head出队,入队和出队都不需要加锁.
+ * 同一时刻只允许一个线程调用poll,多个消费者时需要由调用方保证串行.
+ * 可以限制队列容量,队列满时按OverflowPolicy处理新入队的PendingPost.
  */
-final class PendingPostQueue {
+final class PendingPostQueue extends PostQueue {
+    private static final AtomicReferenceFieldUpdater<PendingPostQueue, PendingPost> TAIL_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(PendingPostQueue.class, PendingPost.class, "tail");
+
+    /** 不限制容量. */
+    static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    /** 哨兵节点,只由消费者访问,head.next才是队头的PendingPost. */
     private PendingPost head;
-    private PendingPost tail;
 
-    /** PendingPost入队,入队之后notifyAll. */
-    synchronized void enqueue(PendingPost pendingPost) {
+    /** 最后一个入队的节点,由生产者原子交换. */
+    private volatile PendingPost tail;
+
+    /** 被拒绝或丢弃的PendingPost通过此缓冲池回收. */
+    private final PendingPostPool pendingPostPool;
+
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+
+    /** 有容量限制时,队列中有效PendingPost的数量(不包括等待丢弃的). */
+    private final AtomicInteger size;
+
+    /** DROP_OLDEST策略下,消费者出队时还需要丢弃的PendingPost数量. */
+    private final AtomicInteger pendingDrops;
+
+    /** BLOCK策略下正在等待空位的生产者数量,及其等待使用的锁. */
+    private volatile int blockedProducers;
+    private final Object capacityLock = new Object();
+
+    PendingPostQueue(PendingPostPool pendingPostPool) {
+        this(pendingPostPool, WaitStrategy.BLOCKING, UNBOUNDED, OverflowPolicy.BLOCK);
+    }
+
+    PendingPostQueue(PendingPostPool pendingPostPool, WaitStrategy waitStrategy, int capacity,
+                     OverflowPolicy overflowPolicy) {
+        super(waitStrategy);
+        this.pendingPostPool = pendingPostPool;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        boolean bounded = capacity != UNBOUNDED;
+        size = bounded ? new AtomicInteger() : null;
+        pendingDrops = bounded ? new AtomicInteger() : null;
+        head = tail = new PendingPost(null, null);
+    }
+
+    /**
+     * PendingPost入队,如果消费线程正在挂起等待则唤醒它.
+     * @param nonBlocking 为true时,BLOCK和FAIL策略在队列已满时直接拒绝,不阻塞也不抛出异常
+     * @return 被拒绝时返回false,此时pendingPost已经被回收
+     */
+    @Override
+    boolean enqueue(PendingPost pendingPost, boolean nonBlocking) {
         if (pendingPost == null) {
             throw new NullPointerException("null cannot be enqueued");
         }
+        if (size != null) {
+            boolean reserved = false;
+            try {
+                reserved = reserve(nonBlocking);
+            } finally {
+                // 被拒绝,或FAIL策略及等待时被中断抛出异常时,回收pendingPost.
+                if (!reserved) {
+                    pendingPostPool.discard(pendingPost);
+                }
+            }
+            if (!reserved) {
+                return false;
+            }
+        }
+        link(pendingPost, pendingPost);
+        return true;
+    }
 
-        if (tail != null) {
-            tail.next = pendingPost;
-            tail = pendingPost;
-        } else if (head == null) {
-            head = tail = pendingPost;
-        } else {
-            throw new IllegalStateException("Head present, but no tail");
+    /**
+     * 将通过next串好的一段链表整体入队.没有容量限制时所有节点只需要一次原子交换.
+     * 有容量限制时逐个入队,中途抛出异常时回收尚未入队的节点.
+     * 由于BLOCK策略可能在中途等待空位,Poster在有容量限制时不使用此方法,而是逐个入队并调度消费者.
+     */
+    @Override
+    void enqueueAll(PendingPost first, PendingPost last) {
+        if (first == null || last == null) {
+            throw new NullPointerException("null cannot be enqueued");
+        }
+        if (size == null) {
+            link(first, last);
+            return;
+        }
+        PendingPost pendingPost = first;
+        try {
+            while (pendingPost != null) {
+                PendingPost current = pendingPost;
+                pendingPost = current == last ? null : current.next;
+                enqueue(current, false);
+            }
+        } finally {
+            if (pendingPost != null) {
+                pendingPostPool.discardAll(pendingPost, last);
+            }
         }
-        notifyAll();
     }
 
-    /** 取队头的PendingPost. */
-    synchronized PendingPost poll() {
-        PendingPost pendingPost = head;
-        if (head != null) {
-            head = head.next;
-            if (head == null) {
-                tail = null;
+    private void link(PendingPost first, PendingPost last) {
+        last.next = null;
+        PendingPost previous = TAIL_UPDATER.getAndSet(this, last);
+        previous.next = first;
+        signalConsumer();
+    }
+
+    /** 为一个新的PendingPost占用容量,返回false表示应当拒绝该PendingPost. */
+    private boolean reserve(boolean nonBlocking) {
+        while (true) {
+            int current = size.get();
+            if (current < capacity) {
+                if (size.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+                continue;
+            }
+            switch (overflowPolicy) {
+                case DROP_NEWEST:
+                    return false;
+                case DROP_OLDEST:
+                    // 有效数量不变,由消费者在出队时丢弃最早的一个.
+                    // 消费者停滞时待丢弃的数量最多累积到capacity,之后拒绝新的PendingPost,
+                    // 因此队列中的节点总数不会超过两倍容量.
+                    int drops = pendingDrops.get();
+                    if (drops >= capacity) {
+                        return false;
+                    }
+                    if (pendingDrops.compareAndSet(drops, drops + 1)) {
+                        return true;
+                    }
+                    break;
+                case FAIL:
+                    if (nonBlocking) {
+                        return false;
+                    }
+                    throw new EventBusException("Poster queue is full (capacity " + capacity + ")");
+                case BLOCK:
+                    if (nonBlocking) {
+                        return false;
+                    }
+                    awaitCapacity();
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown overflow policy: " + overflowPolicy);
             }
         }
-        return pendingPost;
     }
 
-    /** 取队头的PendingPost,如果此时队列为空,则让出对象锁等待maxMillisToWait后再取一次队列头部元素. */
-    synchronized PendingPost poll(int maxMillisToWait) throws InterruptedException {
-        if (head == null) {
-            wait(maxMillisToWait);
+    private void awaitCapacity() {
+        synchronized (capacityLock) {
+            blockedProducers ++;
+            try {
+                // 先登记再检查容量,与消费者先减少数量再检查blockedProducers配合,保证不会错过唤醒.
+                while (size.get() >= capacity) {
+                    capacityLock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EventBusException("Interrupted while waiting for queue capacity", e);
+            } finally {
+                blockedProducers --;
+            }
+        }
+    }
+
+    /** 一个有效的PendingPost出队后释放其占用的容量. */
+    private void releaseCapacity() {
+        size.decrementAndGet();
+        if (blockedProducers > 0) {
+            synchronized (capacityLock) {
+                capacityLock.notifyAll();
+            }
+        }
+    }
+
+    /** 有容量限制时返回队列中有效PendingPost的数量,没有容量限制时不统计,返回-1. */
+    @Override
+    int size() {
+        return size != null ? size.get() : -1;
+    }
+
+    /** 队列是否为空,包括已经交换了tail但尚未链接完成的入队操作. */
+    @Override
+    boolean isEmpty() {
+        return tail == head;
+    }
+
+    /** 取队头的PendingPost,跳过DROP_OLDEST策略下需要丢弃的PendingPost. */
+    @Override
+    PendingPost poll() {
+        while (true) {
+            PendingPost pendingPost = pollNode();
+            if (pendingPost == null || size == null) {
+                return pendingPost;
+            }
+            if (discardIfRequested()) {
+                pendingPostPool.discard(pendingPost);
+                continue;
+            }
+            releaseCapacity();
+            return pendingPost;
+        }
+    }
+
+    /** DROP_OLDEST策略下如果还有待丢弃的数量,占用其中一个并返回true. */
+    private boolean discardIfRequested() {
+        while (true) {
+            int drops = pendingDrops.get();
+            if (drops == 0) {
+                return false;
+            }
+            if (pendingDrops.compareAndSet(drops, drops - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 取队头的PendingPost.
+     * 返回的并不是入队时的节点对象:队头节点成为新的哨兵,其内容被转移到旧哨兵上返回,
+     * 因此返回的节点已经脱离队列,调用方可以安全地回收到缓冲池中.
+     */
+    private PendingPost pollNode() {
+        PendingPost sentinel = head;
+        PendingPost next = sentinel.next;
+        if (next == null) {
+            if (tail == sentinel) {
+                return null;
+            }
+            // 生产者已经交换了tail但还没有链接next,等待其完成.
+            while ((next = sentinel.next) == null) {
+                Thread.yield();
+            }
         }
-        return poll();
+        sentinel.event = next.event;
+        sentinel.subscription = next.subscription;
+        sentinel.enqueueNanos = next.enqueueNanos;
+        next.event = null;
+        next.subscription = null;
+        head = next;
+        sentinel.next = null;
+        return sentinel;
     }
 }
@@ -0,0 +1,55 @@
+package org.greenrobot.eventbus;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * postAll批量分发时的线程本地状态.
+ * 需要排队的投递先按顺序串成链表,整批分发结束后每个Poster只入队一次.
+ */
+final class PostBatch {
+    /** 本批次内已经解析过的分发计划,同一事件类只查找一次. */
+    final Map<Class<?>, DispatchPlan> plans = new IdentityHashMap<>();
+
+    final Chain mainChain = new Chain();
+    final Chain backgroundChain = new Chain();
+    final Chain asyncChain = new Chain();
+
+    /** 入队中途抛出异常时回收其余链表,批次对象被复用,不能保留已经回收的节点. */
+    void discard(PendingPostPool pendingPostPool) {
+        mainChain.discard(pendingPostPool);
+        backgroundChain.discard(pendingPostPool);
+        asyncChain.discard(pendingPostPool);
+    }
+
+    /** 通过PendingPost.next串起来的待入队链表. */
+    static final class Chain {
+        PendingPost head;
+        PendingPost tail;
+        int size;
+
+        void append(PendingPost pendingPost) {
+            pendingPost.next = null;
+            if (tail == null) {
+                head = tail = pendingPost;
+            } else {
+                tail.next = pendingPost;
+                tail = pendingPost;
+            }
+            size ++;
+        }
+
+        void clear() {
+            head = tail = null;
+            size = 0;
+        }
+
+        /** 回收尚未交给Poster的PendingPost. */
+        void discard(PendingPostPool pendingPostPool) {
+            if (size > 0) {
+                pendingPostPool.discardAll(head, tail);
+            }
+            clear();
+        }
+    }
+}
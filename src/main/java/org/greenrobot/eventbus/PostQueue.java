@@ -0,0 +1,140 @@
+package org.greenrobot.eventbus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Poster使用的PendingPost队列.
+ * 同一时刻只允许一个线程出队,子类实现入队和非阻塞出队,队列为空时的等待由这里按WaitStrategy统一处理.
+ */
+abstract class PostQueue {
+    /** BACKOFF策略中自旋和让出CPU的次数. */
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+
+    /** BACKOFF策略中挂起时间的上限. */
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /** BLOCKING策略下正在等待的消费线程,入队后由生产者唤醒. */
+    private volatile Thread waiter;
+
+    private final WaitStrategy waitStrategy;
+
+    PostQueue(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * PendingPost入队.
+     * @param nonBlocking 为true时,队列已满时直接拒绝,不阻塞也不抛出异常
+     * @return 被拒绝时返回false,此时pendingPost已经被回收
+     */
+    abstract boolean enqueue(PendingPost pendingPost, boolean nonBlocking);
+
+    /** 将通过next串好的一段链表入队. */
+    abstract void enqueueAll(PendingPost first, PendingPost last);
+
+    /** 有容量限制时返回队列中有效PendingPost的数量,没有容量限制时不统计,返回-1. */
+    abstract int size();
+
+    abstract boolean isEmpty();
+
+    /** 取队头的PendingPost,队列为空时返回null. */
+    abstract PendingPost poll();
+
+    /** 入队之后调用,如果消费线程正在挂起等待则唤醒它. */
+    final void signalConsumer() {
+        Thread waitingThread = waiter;
+        if (waitingThread != null) {
+            LockSupport.unpark(waitingThread);
+        }
+    }
+
+    /** 取队头的PendingPost,如果此时队列为空,则按等待策略最多等待maxMillisToWait后返回. */
+    final PendingPost poll(int maxMillisToWait) throws InterruptedException {
+        PendingPost pendingPost = poll();
+        if (pendingPost != null) {
+            return pendingPost;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxMillisToWait);
+        switch (waitStrategy) {
+            case BLOCKING:
+                return pollBlocking(deadline);
+            case BACKOFF:
+                return pollWithBackoff(deadline);
+            case YIELDING:
+                return pollSpinning(deadline, true);
+            case BUSY_SPIN:
+                return pollSpinning(deadline, false);
+            default:
+                throw new IllegalStateException("Unknown wait strategy: " + waitStrategy);
+        }
+    }
+
+    private PendingPost pollBlocking(long deadline) throws InterruptedException {
+        waiter = Thread.currentThread();
+        try {
+            while (true) {
+                // 先登记waiter再检查队列,保证不会错过在两者之间入队的生产者的唤醒.
+                PendingPost pendingPost = poll();
+                if (pendingPost != null) {
+                    return pendingPost;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waiter = null;
+        }
+    }
+
+    private PendingPost pollWithBackoff(long deadline) throws InterruptedException {
+        int tries = 0;
+        long parkNanos = 1000;
+        while (true) {
+            PendingPost pendingPost = poll();
+            if (pendingPost != null) {
+                return pendingPost;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            if (tries < SPIN_TRIES) {
+                tries ++;
+            } else if (tries < SPIN_TRIES + YIELD_TRIES) {
+                tries ++;
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, parkNanos);
+                parkNanos = Math.min(parkNanos << 1, MAX_BACKOFF_NANOS);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+    }
+
+    private PendingPost pollSpinning(long deadline, boolean yield) throws InterruptedException {
+        while (true) {
+            PendingPost pendingPost = poll();
+            if (pendingPost != null) {
+                return pendingPost;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (yield) {
+                Thread.yield();
+            }
+        }
+    }
+}
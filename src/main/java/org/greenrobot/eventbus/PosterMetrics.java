@@ -0,0 +1,78 @@
+package org.greenrobot.eventbus;
+
+import java.util.Arrays;
+
+/**
+ * 一个Poster的统计信息:入队和出队数量,PendingPost在队列中等待的时间,
+ * 以及从提交给线程池(或发送Handler消息)到开始消费的交接时间.
+ */
+final class PosterMetrics {
+    private final StripedCounter enqueued = new StripedCounter();
+    private final StripedCounter dequeued = new StripedCounter();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram handOff = new LatencyHistogram();
+
+    /** 最近一次提交消费任务的时间,多个消费任务同时启动时交接时间是近似值. */
+    private volatile long scheduledNanos;
+
+    /** 使用此统计的Poster队列,PARTITIONED的所有通道共用一个统计. */
+    private volatile PostQueue[] queues = new PostQueue[0];
+
+    /** 在Poster创建时登记其队列,用于统计有容量限制的队列深度. */
+    synchronized void track(PostQueue queue) {
+        PostQueue[] tracked = Arrays.copyOf(queues, queues.length + 1);
+        tracked[queues.length] = queue;
+        queues = tracked;
+    }
+
+    void onEnqueued(int count) {
+        enqueued.add(count);
+    }
+
+    /** PendingPost出队,入队时间由PendingPostPool.obtain记录. */
+    void onDequeued(PendingPost pendingPost) {
+        dequeued.increment();
+        queueWait.record(System.nanoTime() - pendingPost.enqueueNanos);
+    }
+
+    void onScheduled() {
+        scheduledNanos = System.nanoTime();
+    }
+
+    void onStarted() {
+        handOff.record(System.nanoTime() - scheduledNanos);
+    }
+
+    EventBusMetrics.PosterStats snapshot() {
+        // 先读出队数量,保证队列深度不会因为并发出队而为负数.
+        long dequeuedCount = dequeued.sum();
+        long enqueuedCount = enqueued.sum();
+        long queueDepth = boundedQueueDepth();
+        if (queueDepth < 0) {
+            // 没有容量限制的队列不会丢弃PendingPost,入队与出队数量之差就是队列深度.
+            queueDepth = Math.max(0, enqueuedCount - dequeuedCount);
+        }
+        return new EventBusMetrics.PosterStats(enqueuedCount, queueDepth,
+                queueWait.snapshot(), handOff.snapshot());
+    }
+
+    /**
+     * 有容量限制的队列直接返回队列中有效PendingPost的数量,DROP_OLDEST丢弃的不会出队,不能用入队与出队数量之差统计.
+     * 有队列没有容量限制时返回-1.
+     */
+    private long boundedQueueDepth() {
+        PostQueue[] tracked = queues;
+        if (tracked.length == 0) {
+            return -1;
+        }
+        long depth = 0;
+        for (PostQueue queue : tracked) {
+            int size = queue.size();
+            if (size < 0) {
+                return -1;
+            }
+            depth += size;
+        }
+        return depth;
+    }
+}
@@ -0,0 +1,121 @@
+package org.greenrobot.eventbus;
+
+/**
+ * 按订阅函数优先级分级的PendingPost队列.
+ * 优先级大于0、等于0、小于0的PendingPost分别进入高、中、低三个PendingPostQueue,每一级内部保持先进先出,
+ * 出队时优先取较高级别的PendingPost.
+ * 为了避免较低级别饿死,某一级别在非空时被连续跳过starvationLimit次后,下一次出队优先取该级别.
+ */
+final class PriorityPostQueue extends PostQueue {
+    private static final int HIGH = 0;
+    private static final int NORMAL = 1;
+    private static final int LOW = 2;
+
+    private final PendingPostQueue[] levels;
+
+    /** 各级别在非空时连续被跳过的次数,只由消费者访问. */
+    private final int[] passedOver;
+
+    private final int starvationLimit;
+
+    /**
+     * @param capacity 每一级队列各自的容量
+     */
+    PriorityPostQueue(PendingPostPool pendingPostPool, WaitStrategy waitStrategy, int capacity,
+                      OverflowPolicy overflowPolicy, int starvationLimit) {
+        super(waitStrategy);
+        this.starvationLimit = starvationLimit;
+        levels = new PendingPostQueue[3];
+        for (int i = 0; i < levels.length; i ++) {
+            // 各级队列只通过非阻塞的poll()出队,等待由本队列统一处理.
+            levels[i] = new PendingPostQueue(pendingPostPool, WaitStrategy.BLOCKING, capacity,
+                    overflowPolicy);
+        }
+        passedOver = new int[levels.length];
+    }
+
+    private static int levelOf(PendingPost pendingPost) {
+        int priority = pendingPost.subscription.subscriberMethod.priority;
+        return priority > 0 ? HIGH : priority == 0 ? NORMAL : LOW;
+    }
+
+    @Override
+    boolean enqueue(PendingPost pendingPost, boolean nonBlocking) {
+        if (!levels[levelOf(pendingPost)].enqueue(pendingPost, nonBlocking)) {
+            return false;
+        }
+        signalConsumer();
+        return true;
+    }
+
+    /** 将链表按级别拆分为几段,每一级仍然只需要一次整体入队. */
+    @Override
+    void enqueueAll(PendingPost first, PendingPost last) {
+        if (first == null || last == null) {
+            throw new NullPointerException("null cannot be enqueued");
+        }
+        PendingPost[] heads = new PendingPost[levels.length];
+        PendingPost[] tails = new PendingPost[levels.length];
+        PendingPost pendingPost = first;
+        while (pendingPost != null) {
+            PendingPost next = pendingPost == last ? null : pendingPost.next;
+            int level = levelOf(pendingPost);
+            if (heads[level] == null) {
+                heads[level] = pendingPost;
+            } else {
+                tails[level].next = pendingPost;
+            }
+            tails[level] = pendingPost;
+            pendingPost = next;
+        }
+        for (int i = 0; i < levels.length; i ++) {
+            if (heads[i] != null) {
+                levels[i].enqueueAll(heads[i], tails[i]);
+            }
+        }
+        signalConsumer();
+    }
+
+    @Override
+    int size() {
+        int size = levels[HIGH].size();
+        return size < 0 ? -1 : size + levels[NORMAL].size() + levels[LOW].size();
+    }
+
+    @Override
+    boolean isEmpty() {
+        for (PendingPostQueue level : levels) {
+            if (!level.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    PendingPost poll() {
+        // 先照顾已经被跳过太多次的较低级别.
+        for (int i = levels.length - 1; i > HIGH; i --) {
+            if (passedOver[i] >= starvationLimit) {
+                passedOver[i] = 0;
+                PendingPost pendingPost = levels[i].poll();
+                if (pendingPost != null) {
+                    return pendingPost;
+                }
+            }
+        }
+        for (int i = 0; i < levels.length; i ++) {
+            PendingPost pendingPost = levels[i].poll();
+            if (pendingPost != null) {
+                passedOver[i] = 0;
+                for (int j = i + 1; j < levels.length; j ++) {
+                    if (!levels[j].isEmpty()) {
+                        passedOver[j] ++;
+                    }
+                }
+                return pendingPost;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,30 @@
+package org.greenrobot.eventbus;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * 通过反射调用订阅函数的调用器,是没有生成调用器时的兜底实现.
+ * 构造时关闭访问检查,避免每次调用都重复做权限校验.
+ */
+final class ReflectiveSubscriberInvoker implements SubscriberInvoker {
+    private final Method method;
+
+    ReflectiveSubscriberInvoker(Method method) {
+        this.method = method;
+        try {
+            method.setAccessible(true);
+        } catch (SecurityException ignored) {
+            // 无法关闭访问检查时仍然可以正常反射调用,只是每次调用多一次权限校验.
+        }
+    }
+
+    @Override
+    public void invoke(Object subscriber, Object event) throws InvocationTargetException {
+        try {
+            method.invoke(subscriber, event);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Unexpected exception", e);
+        }
+    }
+}
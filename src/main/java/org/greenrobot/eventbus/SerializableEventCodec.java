@@ -0,0 +1,119 @@
+package org.greenrobot.eventbus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 基于Java序列化的EventCodec,只处理实现了Serializable的事件.
+ * 指定允许的类型时,解码只实例化这些类型及其子类、父类,以及String、基本类型的包装类等不可变的基础类型,
+ * 数据中出现其他类时直接失败,用于解码不可信来源(例如其他进程)的数据.
+ */
+public final class SerializableEventCodec implements EventCodec {
+    /** 指定了允许的类型时总是允许的基础类型. */
+    private static final Set<Class<?>> BASIC_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            String.class, Boolean.class, Byte.class, Character.class, Short.class, Integer.class,
+            Long.class, Float.class, Double.class, Number.class, BigInteger.class, BigDecimal.class,
+            Enum.class));
+
+    /** 解码时允许的类型,为null时不限制. */
+    private final Class<?>[] allowedTypes;
+
+    /** 不限制解码的类,只用于可信的数据,例如本进程写入的文件. */
+    public SerializableEventCodec() {
+        allowedTypes = null;
+    }
+
+    /**
+     * 解码时只允许allowedTypes及其子类、父类和基础类型,事件字段中用到的其他类也需要列出.
+     */
+    public SerializableEventCodec(Class<?>... allowedTypes) {
+        if (allowedTypes.length == 0) {
+            throw new IllegalArgumentException("No allowed types");
+        }
+        this.allowedTypes = allowedTypes.clone();
+    }
+
+    @Override
+    public byte[] encode(Object event) throws IOException {
+        if (!(event instanceof Serializable)) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        try {
+            out.writeObject(event);
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object decode(Class<?> eventClass, byte[] data) throws IOException {
+        ObjectInputStream in = allowedTypes != null
+                ? new FilteringInputStream(new ByteArrayInputStream(data), allowedTypes)
+                : new ObjectInputStream(new ByteArrayInputStream(data));
+        try {
+            return eventClass.cast(in.readObject());
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Cannot decode " + eventClass.getName(), e);
+        } catch (ClassCastException e) {
+            throw new IOException("Cannot decode " + eventClass.getName(), e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /** 解析数据中出现的每个类时检查是否允许,不允许的类不会被初始化和实例化. */
+    private static final class FilteringInputStream extends ObjectInputStream {
+        private final Class<?>[] allowedTypes;
+
+        FilteringInputStream(InputStream in, Class<?>[] allowedTypes) throws IOException {
+            super(in);
+            this.allowedTypes = allowedTypes;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            // ObjectInputStream加载类时不执行静态初始化,检查通过之前不会执行该类的任何代码.
+            Class<?> clazz = super.resolveClass(desc);
+            if (!isAllowed(clazz)) {
+                throw new InvalidClassException(desc.getName(), "Class is not allowed for decoding");
+            }
+            return clazz;
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException("Proxy classes are not allowed for decoding");
+        }
+
+        private boolean isAllowed(Class<?> clazz) {
+            while (clazz.isArray()) {
+                clazz = clazz.getComponentType();
+            }
+            if (clazz.isPrimitive() || BASIC_TYPES.contains(clazz)) {
+                return true;
+            }
+            for (Class<?> allowedType : allowedTypes) {
+                // 子类是允许的事件,父类是允许的事件序列化数据中的一部分.
+                if (allowedType.isAssignableFrom(clazz) || clazz.isAssignableFrom(allowedType)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.greenrobot.eventbus;
+
+/**
+ * 检测执行时间超过阈值的订阅函数.
+ * 每个线程模型可以设置不同的阈值,并且只随机地对约1/sampleRate的执行计时,减少System.nanoTime的开销.
+ * 使用随机采样而不是计数采样,避免多个订阅函数交替执行时某个订阅函数永远不被采样.
+ * 随机数状态按线程id分段存放,不使用原子操作,并发时的覆盖写入不影响采样.
+ */
+final class SlowSubscriberDetector {
+    /** 分段间隔,16个int即64字节,避免伪共享. */
+    private static final int PADDING = 16;
+    private static final int STRIPES = 16;
+
+    /** 按ThreadMode.ordinal()存放的阈值,0表示不检测该线程模型. */
+    private final long[] thresholdNanos;
+
+    private final int sampleMask;
+    /** 每段的xorshift随机数状态,不能为0. */
+    private final int[] seeds = new int[STRIPES * PADDING];
+
+    private final EventBus eventBus;
+
+    /** 为null时将SlowSubscriberEvent发布到EventBus. */
+    private final SlowSubscriberListener listener;
+
+    /** @param sampleRate 平均每sampleRate次执行采样一次,需要是2的幂 */
+    SlowSubscriberDetector(EventBus eventBus, long[] thresholdNanos, int sampleRate,
+                           SlowSubscriberListener listener) {
+        this.eventBus = eventBus;
+        this.thresholdNanos = thresholdNanos;
+        this.sampleMask = sampleRate - 1;
+        this.listener = listener;
+        for (int i = 0; i < STRIPES; i ++) {
+            seeds[i * PADDING] = 0x9E3779B9 * (i + 1);
+        }
+    }
+
+    /** 本次执行是否需要计时. */
+    boolean shouldSample(Subscription subscription) {
+        if (thresholdNanos[subscription.subscriberMethod.threadMode.ordinal()] == 0) {
+            return false;
+        }
+        if (sampleMask == 0) {
+            return true;
+        }
+        int index = (int) (Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+        int seed = seeds[index];
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        seeds[index] = seed;
+        return (seed & sampleMask) == 0;
+    }
+
+    void check(Subscription subscription, Object subscriber, Object event, boolean queued,
+               long durationNanos) {
+        ThreadMode threadMode = subscription.subscriberMethod.threadMode;
+        if (durationNanos < thresholdNanos[threadMode.ordinal()]
+                || event instanceof SlowSubscriberEvent) {
+            // 不报告处理SlowSubscriberEvent本身的订阅函数,避免循环.
+            return;
+        }
+        SlowSubscriberEvent slowSubscriberEvent = new SlowSubscriberEvent(eventBus, subscriber,
+                subscription.subscriberMethod.methodString(), event, threadMode, queued,
+                Thread.currentThread().getName(), durationNanos);
+        if (listener != null) {
+            listener.onSlowSubscriber(slowSubscriberEvent);
+        } else {
+            eventBus.post(slowSubscriberEvent);
+        }
+    }
+}
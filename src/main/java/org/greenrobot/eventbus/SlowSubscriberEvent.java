@@ -0,0 +1,41 @@
+package org.greenrobot.eventbus;
+
+/**
+ * 订阅函数执行时间超过其线程模型的阈值时发送的EventBus内部自定义事件.
+ * 配置了SlowSubscriberListener时改为回调该监听器.
+ */
+public final class SlowSubscriberEvent {
+    public final EventBus eventBus;
+
+    /** 执行较慢的订阅者. */
+    public final Object causingSubscriber;
+
+    /** 订阅函数的描述,格式为"类名#方法名(事件类名". */
+    public final String subscriberMethod;
+
+    public final Object causingEvent;
+
+    /** 订阅函数声明的线程模型. */
+    public final ThreadMode threadMode;
+
+    /** 是否由Poster从队列中取出执行,为false表示在发布线程上直接执行. */
+    public final boolean queued;
+
+    /** 执行订阅函数的线程名称. */
+    public final String threadName;
+
+    public final long durationNanos;
+
+    public SlowSubscriberEvent(EventBus eventBus, Object causingSubscriber, String subscriberMethod,
+                               Object causingEvent, ThreadMode threadMode, boolean queued,
+                               String threadName, long durationNanos) {
+        this.eventBus = eventBus;
+        this.causingSubscriber = causingSubscriber;
+        this.subscriberMethod = subscriberMethod;
+        this.causingEvent = causingEvent;
+        this.threadMode = threadMode;
+        this.queued = queued;
+        this.threadName = threadName;
+        this.durationNanos = durationNanos;
+    }
+}
@@ -0,0 +1,8 @@
+package org.greenrobot.eventbus;
+
+/**
+ * 接收执行较慢的订阅函数的报告,在执行该订阅函数的线程上回调,实现应当尽快返回.
+ */
+public interface SlowSubscriberListener {
+    void onSlowSubscriber(SlowSubscriberEvent event);
+}
@@ -0,0 +1,242 @@
+package org.greenrobot.eventbus;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * sticky事件的持久化文件.
+ * 文件通过内存映射以追加日志的方式写入,每次sticky事件变化只追加一条记录:
+ * 保存事件写入PUT记录,移除事件写入REMOVE记录(墓碑).文件写满或无效记录过多时,
+ * 将当前有效的事件写入新文件并替换旧文件(压缩).
+ * 每条记录格式为: [int 内容长度][int 内容CRC32][byte 操作][short 类名长度][类名][事件数据],
+ * 读取时遇到长度为0或校验失败的记录即认为日志结束,因此写入中途崩溃只会丢失最后一条记录.
+ * 非线程安全,由StickyEventStore加锁调用.
+ */
+final class StickyEventFile {
+    private static final int MAGIC = 0x45425354;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final int MIN_CAPACITY = 64 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final EventCodec codec;
+
+    /** Map<事件类名, 编码后的事件数据>,即文件中当前有效的内容,压缩时直接写出. */
+    private final Map<String, byte[]> live = new LinkedHashMap<>();
+
+    /** 有效内容所占的字节数,用于判断是否需要压缩. */
+    private int liveBytes;
+
+    /** 映射的文件内容,position为下一条记录的写入位置. */
+    private MappedByteBuffer buffer;
+
+    StickyEventFile(File file, EventCodec codec) {
+        this.file = file;
+        this.codec = codec;
+    }
+
+    /**
+     * 读取文件中保存的事件.文件不存在或格式不对时从空文件开始,
+     * 无法还原的事件(例如类已经不存在)会被跳过.
+     */
+    Map<Class<?>, Object> load() throws IOException {
+        Map<Class<?>, Object> events = new LinkedHashMap<>();
+        boolean needsCompaction = true;
+        if (file.length() >= HEADER_SIZE) {
+            buffer = map(file, file.length());
+            if (buffer.getInt() == MAGIC && buffer.getInt() == VERSION) {
+                boolean clean = readRecords();
+                // 日志尾部有损坏的记录,或无效记录占比过高时,立即重写,避免之后追加的记录与旧数据混在一起.
+                needsCompaction = !clean || buffer.position() > 2 * (liveBytes + HEADER_SIZE);
+            } else {
+                live.clear();
+                liveBytes = 0;
+            }
+        }
+        if (needsCompaction) {
+            compact(0);
+        }
+        for (Map.Entry<String, byte[]> entry : live.entrySet()) {
+            try {
+                Class<?> eventClass = Class.forName(entry.getKey(), true,
+                        StickyEventFile.class.getClassLoader());
+                events.put(eventClass, codec.decode(eventClass, entry.getValue()));
+            } catch (Exception e) {
+                Log.w("EventBus", "Could not restore sticky event " + entry.getKey(), e);
+            }
+        }
+        return events;
+    }
+
+    /** 依次读取记录重建live,返回文件是否在一条长度为0的记录处正常结束. */
+    private boolean readRecords() {
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            if (length == 0) {
+                buffer.position(start);
+                return true;
+            }
+            if (length < 3 || length > buffer.remaining() - 4) {
+                buffer.position(start);
+                return false;
+            }
+            int checksum = buffer.getInt();
+            byte[] content = new byte[length];
+            buffer.get(content);
+            crc.reset();
+            crc.update(content, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                buffer.position(start);
+                return false;
+            }
+            int nameLength = ((content[1] & 0xff) << 8) | (content[2] & 0xff);
+            if (3 + nameLength > length) {
+                buffer.position(start);
+                return false;
+            }
+            String className = new String(content, 3, nameLength, UTF_8);
+            if (content[0] == OP_PUT) {
+                byte[] data = new byte[length - 3 - nameLength];
+                System.arraycopy(content, 3 + nameLength, data, 0, data.length);
+                putLive(className, data);
+            } else {
+                removeLive(className);
+            }
+        }
+        return true;
+    }
+
+    /** 保存事件,编码器不处理该类事件时移除之前保存的同类事件. */
+    void put(Object event) throws IOException {
+        String className = event.getClass().getName();
+        byte[] data = codec.encode(event);
+        if (data == null) {
+            remove(event.getClass());
+            return;
+        }
+        putLive(className, data);
+        append(OP_PUT, className, data);
+    }
+
+    void remove(Class<?> eventClass) throws IOException {
+        String className = eventClass.getName();
+        if (removeLive(className)) {
+            append(OP_REMOVE, className, null);
+        }
+    }
+
+    void clear() throws IOException {
+        live.clear();
+        liveBytes = 0;
+        compact(0);
+    }
+
+    private void putLive(String className, byte[] data) {
+        byte[] previous = live.put(className, data);
+        liveBytes += recordSize(className, data);
+        if (previous != null) {
+            liveBytes -= recordSize(className, previous);
+        }
+    }
+
+    private boolean removeLive(String className) {
+        byte[] previous = live.remove(className);
+        if (previous == null) {
+            return false;
+        }
+        liveBytes -= recordSize(className, previous);
+        return true;
+    }
+
+    private static int recordSize(String className, byte[] data) {
+        return RECORD_HEADER_SIZE + 3 + className.getBytes(UTF_8).length
+                + (data != null ? data.length : 0);
+    }
+
+    private void append(byte op, String className, byte[] data) throws IOException {
+        // 保留4个字节作为结束标记.
+        int size = recordSize(className, data);
+        if (buffer == null || buffer.remaining() < size + 4) {
+            // 压缩时live已经包含本次修改,不需要再追加.读取文件失败时也通过压缩重新建立文件.
+            compact(size);
+            return;
+        }
+        writeRecord(buffer, op, className, data);
+    }
+
+    /** 先写内容和校验值,最后写长度,读取时长度非0才认为记录存在. */
+    private static void writeRecord(MappedByteBuffer target, byte op, String className,
+                                    byte[] data) {
+        byte[] name = className.getBytes(UTF_8);
+        int dataLength = data != null ? data.length : 0;
+        int length = 3 + name.length + dataLength;
+        byte[] content = new byte[length];
+        content[0] = op;
+        content[1] = (byte) (name.length >>> 8);
+        content[2] = (byte) name.length;
+        System.arraycopy(name, 0, content, 3, name.length);
+        if (data != null) {
+            System.arraycopy(data, 0, content, 3 + name.length, dataLength);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, length);
+        int start = target.position();
+        target.position(start + 4);
+        target.putInt((int) crc.getValue());
+        target.put(content);
+        target.putInt(start, length);
+    }
+
+    /** 将live写入临时文件后替换原文件,并映射新文件继续追加. */
+    private void compact(int reserve) throws IOException {
+        long capacity = MIN_CAPACITY;
+        long required = 2L * (HEADER_SIZE + liveBytes + reserve) + 4;
+        while (capacity < required) {
+            capacity <<= 1;
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        if (temp.exists() && !temp.delete()) {
+            throw new IOException("Cannot delete " + temp);
+        }
+        MappedByteBuffer target = map(temp, capacity);
+        target.putInt(MAGIC);
+        target.putInt(VERSION);
+        for (Map.Entry<String, byte[]> entry : live.entrySet()) {
+            writeRecord(target, OP_PUT, entry.getKey(), entry.getValue());
+        }
+        target.force();
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+        buffer = target;
+    }
+
+    private static MappedByteBuffer map(File file, long size) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            // 映射建立后即使关闭文件也仍然有效.
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+}
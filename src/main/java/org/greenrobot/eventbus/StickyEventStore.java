@@ -0,0 +1,228 @@
+package org.greenrobot.eventbus;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * sticky事件存储.
+ * 每个具体事件类只保存最新的一个事件,同时维护"事件类型->可赋值给它的sticky事件类"索引,
+ * 注册sticky订阅函数时只需访问与其订阅类型匹配的事件,而不需要遍历全部sticky事件.
+ * 读操作无锁,写操作较少,在store上互斥以保持事件和索引一致.
+ * 配置了持久化文件时,每次修改同步追加到文件中,创建时在后台读取文件,第一次访问前等待读取完成.
+ */
+final class StickyEventStore {
+    /** Map<具体事件类类型, 最新的sticky事件>. */
+    private final ConcurrentHashMap<Class<?>, Object> events = new ConcurrentHashMap<>();
+
+    /** Map<事件类型(包括父类和接口), 可赋值给该类型且存在sticky事件的具体事件类集合>. */
+    private final ConcurrentHashMap<Class<?>, Set<Class<?>>> assignableClasses =
+            new ConcurrentHashMap<>();
+
+    /** 是否响应父类事件,为false时索引中只有事件类自身. */
+    private final boolean eventInheritance;
+
+    /** 持久化文件,未开启持久化时为null. */
+    private final StickyEventFile file;
+
+    /** 读取持久化文件的任务,未开启持久化时为null. */
+    private final FutureTask<Void> loadTask;
+    private volatile boolean loaded;
+
+    StickyEventStore(boolean eventInheritance) {
+        this(eventInheritance, null);
+    }
+
+    StickyEventStore(boolean eventInheritance, StickyEventFile file) {
+        this.eventInheritance = eventInheritance;
+        this.file = file;
+        if (file != null) {
+            loadTask = new FutureTask<>(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    load();
+                    return null;
+                }
+            });
+        } else {
+            loadTask = null;
+            loaded = true;
+        }
+    }
+
+    /** 在后台提前读取持久化文件,没有开启持久化时什么也不做. */
+    void preload(Executor executor) {
+        if (loadTask != null) {
+            executor.execute(loadTask);
+        }
+    }
+
+    private synchronized void load() throws IOException {
+        Map<Class<?>, Object> restored = file.load();
+        for (Map.Entry<Class<?>, Object> entry : restored.entrySet()) {
+            putInMemory(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /** 等待持久化文件读取完成,后台任务还没有开始执行时由当前线程直接读取. */
+    private void awaitLoaded() {
+        if (loaded) {
+            return;
+        }
+        // FutureTask只会执行一次,已经在其他线程执行时run()直接返回.
+        loadTask.run();
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    loadTask.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Log.e("EventBus", "Could not load sticky events", e.getCause());
+                    break;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        loaded = true;
+    }
+
+    /** @return 被替换的同类sticky事件,没有时返回null */
+    Object put(Object event) {
+        awaitLoaded();
+        synchronized (this) {
+            Object previous = putInMemory(event.getClass(), event);
+            if (file != null) {
+                try {
+                    file.put(event);
+                } catch (IOException e) {
+                    Log.e("EventBus", "Could not persist sticky event " + event.getClass(), e);
+                }
+            }
+            return previous;
+        }
+    }
+
+    private Object putInMemory(Class<?> eventClass, Object event) {
+        Object previous = events.put(eventClass, event);
+        if (previous == null) {
+            for (Class<?> eventType : typesOf(eventClass)) {
+                Set<Class<?>> classes = assignableClasses.get(eventType);
+                if (classes == null) {
+                    classes = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+                    assignableClasses.put(eventType, classes);
+                }
+                classes.add(eventClass);
+            }
+        }
+        return previous;
+    }
+
+    Object get(Class<?> eventClass) {
+        awaitLoaded();
+        return events.get(eventClass);
+    }
+
+    Object remove(Class<?> eventClass) {
+        awaitLoaded();
+        synchronized (this) {
+            Object removed = events.remove(eventClass);
+            if (removed != null) {
+                removed(eventClass);
+            }
+            return removed;
+        }
+    }
+
+    /** 只有当前保存的事件就是event时才移除. */
+    boolean remove(Object event) {
+        awaitLoaded();
+        synchronized (this) {
+            Class<?> eventClass = event.getClass();
+            if (!events.remove(eventClass, event)) {
+                return false;
+            }
+            removed(eventClass);
+            return true;
+        }
+    }
+
+    void clear() {
+        awaitLoaded();
+        synchronized (this) {
+            events.clear();
+            assignableClasses.clear();
+            if (file != null) {
+                try {
+                    file.clear();
+                } catch (IOException e) {
+                    Log.e("EventBus", "Could not clear persisted sticky events", e);
+                }
+            }
+        }
+    }
+
+    private void removed(Class<?> eventClass) {
+        for (Class<?> eventType : typesOf(eventClass)) {
+            Set<Class<?>> classes = assignableClasses.get(eventType);
+            if (classes != null) {
+                classes.remove(eventClass);
+                if (classes.isEmpty()) {
+                    assignableClasses.remove(eventType);
+                }
+            }
+        }
+        if (file != null) {
+            try {
+                file.remove(eventClass);
+            } catch (IOException e) {
+                Log.e("EventBus", "Could not persist removal of sticky event " + eventClass, e);
+            }
+        }
+    }
+
+    /** sticky事件索引用到的事件类型,不响应父类事件时只有事件类自身. */
+    private List<Class<?>> typesOf(Class<?> eventClass) {
+        return eventInheritance ? EventBus.lookupAllEventTypes(eventClass)
+                : Collections.<Class<?>>singletonList(eventClass);
+    }
+
+    /**
+     * 返回订阅eventType的sticky订阅函数需要收到的事件.
+     * 响应父类事件时包括eventType所有子类的sticky事件,否则只包括eventType自身的.
+     */
+    List<Object> matching(Class<?> eventType) {
+        awaitLoaded();
+        if (!eventInheritance) {
+            Object event = events.get(eventType);
+            return event != null ? Collections.singletonList(event) : Collections.emptyList();
+        }
+        Set<Class<?>> classes = assignableClasses.get(eventType);
+        if (classes == null) {
+            return Collections.emptyList();
+        }
+        List<Object> matching = new ArrayList<>(classes.size());
+        for (Class<?> eventClass : classes) {
+            Object event = events.get(eventClass);
+            if (event != null) {
+                matching.add(event);
+            }
+        }
+        return matching;
+    }
+}
@@ -0,0 +1,42 @@
+package org.greenrobot.eventbus;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分段计数器,不同线程按线程id累加到不同的槽位,避免多个线程竞争同一个原子变量.
+ * 每个槽位之间间隔一个缓存行,读取时汇总所有槽位.
+ */
+final class StripedCounter {
+    /** 槽位间隔,8个long即64字节,避免伪共享. */
+    private static final int PADDING = 8;
+
+    private static final int STRIPES = stripeCount();
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    private static int stripeCount() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < cpus * 2) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    void increment() {
+        add(1);
+    }
+
+    void add(long delta) {
+        int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+        cells.getAndAdd(stripe * PADDING, delta);
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i ++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+}
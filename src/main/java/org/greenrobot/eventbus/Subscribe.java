@@ -20,4 +20,10 @@ public @interface Subscribe {
 
     /** 标记订阅方法的优先级. */
     int priority() default 0;
+
+    /**
+     * 标记MAIN和BACKGROUND订阅方法是否合并投递.
+     * 为true时,排队中尚未投递的事件会被同一键(参见KeyedEvent)的新事件替换,只投递最新的值.
+     */
+    boolean conflate() default false;
 }
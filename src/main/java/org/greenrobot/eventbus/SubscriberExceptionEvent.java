@@ -9,11 +9,20 @@ public class SubscriberExceptionEvent {
 
     public final Object causingSubscriber;
 
+    /** 同一订阅在上一次SubscriberExceptionEvent之后,因限流没有报告的异常数量. */
+    public final int suppressedCount;
+
     public SubscriberExceptionEvent(EventBus eventBus, Throwable throwable, Object causingEvent,
                                     Object causingSubscriber) {
+        this(eventBus, throwable, causingEvent, causingSubscriber, 0);
+    }
+
+    public SubscriberExceptionEvent(EventBus eventBus, Throwable throwable, Object causingEvent,
+                                    Object causingSubscriber, int suppressedCount) {
         this.eventBus = eventBus;
         this.throwable = throwable;
         this.causingEvent = causingEvent;
         this.causingSubscriber = causingSubscriber;
+        this.suppressedCount = suppressedCount;
     }
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package org.greenrobot.eventbus;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * 订阅函数调用器,在注册时为每个订阅函数构建一次,随SubscriberMethod一起缓存.
+ * 注解处理器生成的索引类会提供直接调用订阅函数的实现,没有索引时退化为反射调用.
+ */
+public interface SubscriberInvoker {
+    /**
+     * 调用订阅函数.
+     * @param subscriber 订阅者对象
+     * @param event 订阅事件
+     * @throws InvocationTargetException 订阅函数本身抛出的异常被包装后抛出
+     */
+    void invoke(Object subscriber, Object event) throws InvocationTargetException;
+}
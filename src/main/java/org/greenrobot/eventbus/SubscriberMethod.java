@@ -21,16 +21,41 @@ public class SubscriberMethod {
     /** 是否为sticky响应函数. */
     final boolean sticky;
 
+    /** 排队投递时是否合并同一键尚未投递的事件. */
+    final boolean conflate;
+
+    /** 订阅函数调用器,在构造时创建一次,随METHOD_CACHE一起缓存. */
+    final SubscriberInvoker invoker;
+
     /** Used for efficient comparison */
     String methodString;
 
     public SubscriberMethod(Method method, Class<?> eventType, ThreadMode threadMode, int priority,
                             boolean sticky) {
+        this(method, eventType, threadMode, priority, sticky, null);
+    }
+
+    /**
+     * @param invoker 预先生成的订阅函数调用器,为null时使用反射调用.
+     */
+    public SubscriberMethod(Method method, Class<?> eventType, ThreadMode threadMode, int priority,
+                            boolean sticky, SubscriberInvoker invoker) {
+        this(method, eventType, threadMode, priority, sticky, false, invoker);
+    }
+
+    /**
+     * @param conflate 排队投递时是否合并同一键尚未投递的事件.
+     * @param invoker 预先生成的订阅函数调用器,为null时使用反射调用.
+     */
+    public SubscriberMethod(Method method, Class<?> eventType, ThreadMode threadMode, int priority,
+                            boolean sticky, boolean conflate, SubscriberInvoker invoker) {
         this.method = method;
         this.threadMode = threadMode;
         this.eventType = eventType;
         this.priority = priority;
         this.sticky = sticky;
+        this.conflate = conflate;
+        this.invoker = invoker != null ? invoker : new ReflectiveSubscriberInvoker(method);
     }
 
     @Override
@@ -61,6 +86,12 @@ public class SubscriberMethod {
         }
     }
 
+    /** 订阅函数的描述,格式同methodString. */
+    String methodString() {
+        checkMethodString();
+        return methodString;
+    }
+
     @Override
     public int hashCode() {
         return method.hashCode();
@@ -9,7 +9,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 /**
  * 订阅者响应函数发现类.
@@ -28,10 +32,17 @@ class SubscriberMethodFinder {
     private static final Map<Class<?>, List<SubscriberMethod>> METHOD_CACHE =
             new ConcurrentHashMap<>();
 
-    /** 这里我们只介绍ignoreGeneratedIndex为true的情况,即只在运行时分析订阅者类的订阅函数信息. */
+    /**
+     * 正在查找订阅函数的订阅者类,同一个类同时只查找一次,其他线程等待该查找完成.
+     * 查找完成并写入METHOD_CACHE后移除.
+     */
+    private static final ConcurrentHashMap<Class<?>, FutureTask<List<SubscriberMethod>>> IN_FLIGHT =
+            new ConcurrentHashMap<>();
+
+    /** 为true时忽略注解处理器生成的索引,只在运行时通过反射分析订阅者类的订阅函数信息. */
     private final boolean ignoreGeneratedIndex;
 
-    /** ignoreGeneratedIndex为true时,subscriberInfoIndexes为空集合. */
+    /** 注解处理器生成的索引集合,没有通过EventBusBuilder.addIndex添加索引时为null. */
     private List<SubscriberInfoIndex> subscriberInfoIndexes;
     private final boolean strictMethodVerification;
 
@@ -54,9 +65,78 @@ class SubscriberMethodFinder {
         if (subscriberMethods != null) {
             return subscriberMethods;
         }
+        FutureTask<List<SubscriberMethod>> task = findTask(subscriberClass);
+        // 预加载任务还在线程池中排队时直接在当前线程执行,正在其他线程执行时run立即返回,由get等待其完成.
+        task.run();
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new EventBusException("Could not find subscriber methods of " + subscriberClass, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EventBusException("Interrupted while finding subscriber methods of "
+                    + subscriberClass, e);
+        }
+    }
 
-        // 通过反射来获取订阅者的订阅方法信息集合.
-        subscriberMethods = findUsingReflection(subscriberClass);
+    /** 在executor中查找订阅者类的订阅函数并写入METHOD_CACHE,已经缓存或正在查找时不重复提交. */
+    void preload(Executor executor, Class<?> subscriberClass) {
+        if (METHOD_CACHE.containsKey(subscriberClass)) {
+            return;
+        }
+        FutureTask<List<SubscriberMethod>> task = new FutureTask<>(newFindCall(subscriberClass));
+        if (IN_FLIGHT.putIfAbsent(subscriberClass, task) == null) {
+            executor.execute(task);
+        }
+    }
+
+    /** 获取订阅者类正在进行的查找任务,没有时登记一个新任务,由调用方执行. */
+    private FutureTask<List<SubscriberMethod>> findTask(Class<?> subscriberClass) {
+        FutureTask<List<SubscriberMethod>> task = IN_FLIGHT.get(subscriberClass);
+        if (task == null) {
+            FutureTask<List<SubscriberMethod>> newTask = new FutureTask<>(newFindCall(subscriberClass));
+            task = IN_FLIGHT.putIfAbsent(subscriberClass, newTask);
+            if (task == null) {
+                task = newTask;
+            }
+        }
+        return task;
+    }
+
+    private Callable<List<SubscriberMethod>> newFindCall(final Class<?> subscriberClass) {
+        return new Callable<List<SubscriberMethod>>() {
+            @Override
+            public List<SubscriberMethod> call() {
+                try {
+                    return findAndCache(subscriberClass);
+                } finally {
+                    // 写入METHOD_CACHE之后移除,之后的查找直接命中缓存;失败时移除,之后的查找重新执行并抛出异常.
+                    IN_FLIGHT.remove(subscriberClass);
+                }
+            }
+        };
+    }
+
+    private List<SubscriberMethod> findAndCache(Class<?> subscriberClass) {
+        // 等待期间其他查找可能已经完成.
+        List<SubscriberMethod> subscriberMethods = METHOD_CACHE.get(subscriberClass);
+        if (subscriberMethods != null) {
+            return subscriberMethods;
+        }
+
+        if (ignoreGeneratedIndex) {
+            // 通过反射来获取订阅者的订阅方法信息集合.
+            subscriberMethods = findUsingReflection(subscriberClass);
+        } else {
+            // 优先从生成的索引中获取订阅方法信息集合,索引中没有的类再退化为反射.
+            subscriberMethods = findUsingInfo(subscriberClass);
+        }
 
         if (subscriberMethods.isEmpty()) {
             throw new EventBusException("Subscriber" + subscriberClass + " and its super classes have no " +
@@ -68,6 +148,50 @@ class SubscriberMethodFinder {
         }
     }
 
+    private List<SubscriberMethod> findUsingInfo(Class<?> subscriberClass) {
+        FindState findState = prepareFindState();
+        findState.initForSubscriber(subscriberClass);
+        while (findState.clazz != null) {
+            findState.subscriberInfo = getSubscriberInfo(findState);
+            if (findState.subscriberInfo != null) {
+                // 索引中已经记录了订阅函数,无需调用getDeclaredMethods遍历.
+                SubscriberMethod[] array = findState.subscriberInfo.getSubscriberMethods();
+                for (SubscriberMethod subscriberMethod : array) {
+                    if (findState.checkAdd(subscriberMethod.method, subscriberMethod.eventType)) {
+                        findState.subscriberMethods.add(subscriberMethod);
+                    }
+                }
+                if (!findState.subscriberInfo.shouldCheckSuperclass()) {
+                    findState.skipSuperClasses = true;
+                }
+            } else {
+                findUsingReflectionInSingleClass(findState);
+            }
+            findState.moveToSuperclass();
+        }
+        return getMethodsAndRelease(findState);
+    }
+
+    /** 获取当前类的索引信息,优先沿着上一个类的getSuperSubscriberInfo链查找,再查询各个索引. */
+    private SubscriberInfo getSubscriberInfo(FindState findState) {
+        if (findState.subscriberInfo != null &&
+                findState.subscriberInfo.getSuperSubscriberInfo() != null) {
+            SubscriberInfo superclassInfo = findState.subscriberInfo.getSuperSubscriberInfo();
+            if (findState.clazz == superclassInfo.getSubscriberClass()) {
+                return superclassInfo;
+            }
+        }
+        if (subscriberInfoIndexes != null) {
+            for (SubscriberInfoIndex index : subscriberInfoIndexes) {
+                SubscriberInfo info = index.getSubscriberInfo(findState.clazz);
+                if (info != null) {
+                    return info;
+                }
+            }
+        }
+        return null;
+    }
+
     private List<SubscriberMethod> findUsingReflection(Class<?> subscriberClass) {
         FindState findState = prepareFindState();
         findState.initForSubscriber(subscriberClass);
@@ -125,7 +249,8 @@ class SubscriberMethodFinder {
                             ThreadMode threadMode = subscribeAnnotation.threadMode();
                             findState.subscriberMethods.add(new SubscriberMethod(
                                     method, eventType, threadMode, subscribeAnnotation.priority(),
-                                    subscribeAnnotation.sticky()
+                                    subscribeAnnotation.sticky(), subscribeAnnotation.conflate(),
+                                    null
                             ));
                         }
                     }
@@ -4,8 +4,11 @@ package org.greenrobot.eventbus;
  * 订阅者信息,包含订阅者对象,订阅者中一个订阅函数.
  */
 final class Subscription {
-    /** 订阅者的实例化对象. */
-    final Object subscriber;
+    /** 订阅者的实例化对象,弱引用注册时为null. */
+    private final Object subscriber;
+
+    /** 弱引用注册时订阅者的弱引用,普通注册时为null. */
+    final WeakSubscriber weakSubscriber;
 
     /** 订阅者的订阅函数信息. */
     final SubscriberMethod subscriberMethod;
@@ -13,17 +16,68 @@ final class Subscription {
     /** 订阅函数是否被取消注册. */
     volatile boolean active;
 
+    /** 合并投递状态,订阅函数没有声明conflate时为null. */
+    final EventConflater conflater;
+
+    /** 失败和超时统计,用于熔断和异常报告限流. */
+    final SubscriptionHealth health = new SubscriptionHealth();
+
+    /** 订阅函数的执行耗时统计,未开启统计时为null. */
+    final LatencyHistogram invokeTime;
+
+    /** 按键注册时的键,只接收getEventKey()与其相等的KeyedEvent,普通注册时为null. */
+    final Object key;
+
     Subscription(Object subscriber, SubscriberMethod subscriberMethod) {
+        this(subscriber, null, subscriberMethod, null, null);
+    }
+
+    Subscription(Object subscriber, SubscriberMethod subscriberMethod, LatencyHistogram invokeTime,
+                 Object key) {
+        this(subscriber, null, subscriberMethod, invokeTime, key);
+    }
+
+    Subscription(WeakSubscriber weakSubscriber, SubscriberMethod subscriberMethod,
+                 LatencyHistogram invokeTime) {
+        this(null, weakSubscriber, subscriberMethod, invokeTime, null);
+    }
+
+    private Subscription(Object subscriber, WeakSubscriber weakSubscriber,
+                         SubscriberMethod subscriberMethod, LatencyHistogram invokeTime, Object key) {
         this.subscriber = subscriber;
+        this.weakSubscriber = weakSubscriber;
         this.subscriberMethod = subscriberMethod;
+        this.invokeTime = invokeTime;
+        this.key = key;
+        conflater = subscriberMethod.conflate ? new EventConflater() : null;
         active = true;
     }
 
+    /** 事件是否可以投递给该订阅:普通订阅接收所有事件,按键订阅只接收键相同的KeyedEvent. */
+    boolean acceptsKeyOf(Object event) {
+        return key == null
+                || (event instanceof KeyedEvent && key.equals(((KeyedEvent) event).getEventKey()));
+    }
+
+    /** @return 弱引用注册的订阅者已被回收时返回null */
+    Object getSubscriber() {
+        return weakSubscriber != null ? weakSubscriber.get() : subscriber;
+    }
+
+    /**
+     * 订阅是否属于owner.
+     * @param owner 普通注册时为订阅者对象,弱引用注册时为其WeakSubscriber
+     */
+    boolean isOwnedBy(Object owner) {
+        return weakSubscriber != null ? weakSubscriber == owner : subscriber == owner;
+    }
+
     @Override
     public boolean equals(Object other) {
         if (other instanceof Subscription) {
             Subscription otherSubscription = (Subscription) other;
-            return subscriber == otherSubscription.subscriber &&
+            Object target = getSubscriber();
+            return target != null && target == otherSubscription.getSubscriber() &&
                     subscriberMethod.equals(otherSubscription.subscriberMethod);
         } else {
             return false;
@@ -32,6 +86,7 @@ final class Subscription {
 
     @Override
     public int hashCode() {
-        return subscriber.hashCode() + subscriberMethod.methodString.hashCode();
+        int subscriberHash = weakSubscriber != null ? weakSubscriber.hash : subscriber.hashCode();
+        return subscriberHash + subscriberMethod.methodString.hashCode();
     }
 }
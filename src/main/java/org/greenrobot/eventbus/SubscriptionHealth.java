@@ -0,0 +1,123 @@
+package org.greenrobot.eventbus;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个订阅的健康状态:连续失败和连续超时的次数,熔断暂停的截止时间,以及异常报告的限流状态.
+ * 熔断后在冷却时间内不再执行该订阅函数;冷却结束后只放行一次试探执行,试探结束之前其他投递仍被丢弃.
+ * 试探成功则恢复,失败或超时则重新开始冷却.
+ */
+final class SubscriptionHealth {
+    private static final long NEVER = Long.MIN_VALUE;
+
+    /** acquire的结果:丢弃本次投递,正常执行,作为熔断后的试探执行. */
+    static final int REJECTED = 0;
+    static final int ALLOWED = 1;
+    static final int TRIAL = 2;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicInteger consecutiveSlow = new AtomicInteger();
+
+    /** 熔断暂停的截止时间(System.nanoTime),0表示没有熔断. */
+    private volatile long suspendedUntil;
+
+    /** 冷却结束后是否已经有线程取得了试探执行的资格. */
+    private final AtomicBoolean trialRunning = new AtomicBoolean();
+
+    /** 上一次报告异常的时间,以及此后被限流而没有报告的异常数量. */
+    private final AtomicLong lastReport = new AtomicLong(NEVER);
+    private final AtomicInteger suppressed = new AtomicInteger();
+
+    /**
+     * 在执行订阅函数之前调用.
+     * @return 没有熔断时返回ALLOWED;冷却时间内或其他线程正在试探时返回REJECTED;
+     *         冷却结束后第一个通过CAS取得资格的线程返回TRIAL,执行结果必须以trial=true报告
+     */
+    int acquire() {
+        long until = suspendedUntil;
+        if (until == 0) {
+            return ALLOWED;
+        }
+        if (System.nanoTime() - until < 0) {
+            return REJECTED;
+        }
+        return trialRunning.compareAndSet(false, true) ? TRIAL : REJECTED;
+    }
+
+    /** 是否处于熔断的冷却时间内. */
+    private boolean isCoolingDown() {
+        long until = suspendedUntil;
+        return until != 0 && System.nanoTime() - until < 0;
+    }
+
+    /**
+     * @param trial 本次是否是acquire返回TRIAL的试探执行
+     * @return 本次失败导致熔断时返回true
+     */
+    boolean onFailure(int maxFailures, long coolDownNanos, boolean trial) {
+        int failures = consecutiveFailures.incrementAndGet();
+        if (trial) {
+            return reopen(coolDownNanos);
+        }
+        return failures >= maxFailures && suspend(coolDownNanos);
+    }
+
+    /**
+     * @param slowNanos 超过该耗时记为一次超时,0表示不按耗时熔断
+     * @param trial 本次是否是acquire返回TRIAL的试探执行
+     * @return 本次超时导致熔断时返回true
+     */
+    boolean onSuccess(long durationNanos, long slowNanos, int maxSlow, long coolDownNanos,
+                      boolean trial) {
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+        if (slowNanos > 0 && durationNanos >= slowNanos) {
+            int slow = consecutiveSlow.incrementAndGet();
+            if (trial) {
+                return reopen(coolDownNanos);
+            }
+            return slow >= maxSlow && suspend(coolDownNanos);
+        }
+        if (consecutiveSlow.get() != 0) {
+            consecutiveSlow.set(0);
+        }
+        if (trial) {
+            // 只有试探执行成功才恢复,熔断前已经开始的执行成功不影响熔断状态.
+            suspendedUntil = 0;
+            trialRunning.set(false);
+        }
+        return false;
+    }
+
+    /** @return 从未熔断或冷却已结束,即本次是新的熔断时返回true */
+    private boolean suspend(long coolDownNanos) {
+        boolean wasSuspended = isCoolingDown();
+        long until = System.nanoTime() + coolDownNanos;
+        suspendedUntil = until != 0 ? until : 1;
+        return !wasSuspended;
+    }
+
+    /** 试探执行失败或超时,重新开始冷却,先更新截止时间再释放试探资格,冷却结束前不会放行新的试探. */
+    private boolean reopen(long coolDownNanos) {
+        suspend(coolDownNanos);
+        trialRunning.set(false);
+        return true;
+    }
+
+    /**
+     * 按间隔限流异常报告.
+     * @return 本次需要报告时返回上次报告之后被限流的异常数量,不需要报告时返回-1
+     */
+    int tryReport(long intervalNanos) {
+        long now = System.nanoTime();
+        long last = lastReport.get();
+        if ((last == NEVER || now - last >= intervalNanos) && lastReport.compareAndSet(last, now)) {
+            return suppressed.getAndSet(0);
+        }
+        suppressed.incrementAndGet();
+        return -1;
+    }
+}
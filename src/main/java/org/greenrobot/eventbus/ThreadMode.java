@@ -12,5 +12,12 @@ public enum ThreadMode {
     BACKGROUND,
 
     /** 响应函数需要运行的线程为后台线程,可并发执行. */
-    ASYNC
+    ASYNC,
+
+    /**
+     * 响应函数运行在后台线程,按事件的键(参见KeyedEvent)分区:
+     * 同一个键的事件按发布顺序依次执行,不同键的事件在多个通道上并行执行.
+     * 没有键的事件共用一个通道.
+     */
+    PARTITIONED
 }
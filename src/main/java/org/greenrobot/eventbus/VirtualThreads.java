@@ -0,0 +1,40 @@
+package org.greenrobot.eventbus;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程的执行器.
+ * 通过反射查找Executors.newVirtualThreadPerTaskExecutor,运行时不支持虚拟线程(例如Android)时返回null,
+ * 由调用方回退到平台线程池.
+ */
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    /** 所有EventBus共享同一个执行器,虚拟线程按任务创建,不需要池化. */
+    private static class Holder {
+        static final ExecutorService EXECUTOR = create();
+    }
+
+    /** @return 运行时不支持虚拟线程时返回null. */
+    static ExecutorService executor() {
+        return Holder.EXECUTOR;
+    }
+
+    static boolean isSupported() {
+        return Holder.EXECUTOR != null;
+    }
+
+    private static ExecutorService create() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (Exception e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.greenrobot.eventbus;
+
+/**
+ * 后台消费线程在PendingPostQueue为空时的等待策略,用CPU占用换取唤醒延迟.
+ */
+public enum WaitStrategy {
+    /** 挂起消费线程,入队时由生产者唤醒.CPU占用最低,唤醒需要一次线程切换. */
+    BLOCKING,
+
+    /** 先自旋,再让出CPU,最后按指数退避短暂挂起.生产者入队时无需唤醒操作. */
+    BACKOFF,
+
+    /** 循环调用Thread.yield()等待,唤醒延迟低,但空闲时会持续占用调度时间片. */
+    YIELDING,
+
+    /** 忙等待,唤醒延迟最低,空闲时独占一个CPU核心. */
+    BUSY_SPIN
+}
@@ -0,0 +1,23 @@
+package org.greenrobot.eventbus;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 通过registerWeak注册的订阅者的弱引用,同一个订阅者的所有Subscription共用一个.
+ * 订阅者被回收后该引用进入EventBus的ReferenceQueue,由eventTypes找到需要清理的订阅快照.
+ */
+final class WeakSubscriber extends WeakReference<Object> {
+    /** 订阅者订阅的事件类型,只在注册锁内访问. */
+    final List<Class<?>> eventTypes = new ArrayList<>();
+
+    /** 订阅者被回收后仍需要保持不变的哈希值. */
+    final int hash;
+
+    WeakSubscriber(Object subscriber, ReferenceQueue<Object> queue) {
+        super(subscriber, queue);
+        hash = System.identityHashCode(subscriber);
+    }
+}
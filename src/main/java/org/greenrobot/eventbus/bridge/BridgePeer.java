@@ -0,0 +1,358 @@
+package org.greenrobot.eventbus.bridge;
+
+import android.util.Log;
+
+import org.greenrobot.eventbus.EventBusException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * EventBridge的一个连接,由一个写线程和一个读线程组成.
+ * 建立连接后先握手:双方交换协议版本和随机数,再各自发送用共享密钥对双方随机数及自身角色计算的HMAC,
+ * 验证通过后才开始收发事件.角色参与计算,因此收到的证明不能被转发给另一个连接冒充对端.
+ * 发布线程只把事件放入有界发送队列,写线程批量取出事件,编码后作为一个数据帧写出.
+ * 数据帧格式为: [int 帧长度][int 事件数量][事件记录...],每条事件记录为: [UTF 类名][int 数据长度][事件数据].
+ * 读线程在收到的顺序上逐个post事件,订阅函数较慢时不再读取,由TCP把压力传回对端的发送队列.
+ */
+final class BridgePeer {
+    /** BLOCK策略下等待发送队列空位时检查连接是否关闭的间隔. */
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    /** 握手的超时时间,对端在此时间内没有完成握手时断开连接. */
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 10000;
+
+    private static final int NONCE_BYTES = 32;
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final EventBridge bridge;
+    private final Socket socket;
+    private final ArrayBlockingQueue<Object> queue;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Thread reader;
+    private final Thread writer;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /** 是否是主动连接的一方,另一方由读线程完成握手. */
+    private final boolean client;
+
+    /** 读线程正在post的事件,用于避免将其转发回该连接.只由读线程访问. */
+    private Object receiving;
+
+    BridgePeer(EventBridge bridge, Socket socket, int id, boolean client) throws IOException {
+        this.bridge = bridge;
+        this.socket = socket;
+        this.client = client;
+        queue = new ArrayBlockingQueue<>(bridge.queueCapacity);
+        // 事件已经在写线程中合并成帧,不需要Nagle算法再延迟发送.
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+        reader = new ReaderThread(new Runnable() {
+            @Override
+            public void run() {
+                if (!BridgePeer.this.client && !acceptHandshake()) {
+                    return;
+                }
+                readLoop();
+            }
+        }, "EventBridge-reader-" + id);
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "EventBridge-writer-" + id);
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+    }
+
+    /** 主动连接的一方在connect的线程上完成握手后启动读写线程. */
+    void start() {
+        writer.start();
+        reader.start();
+    }
+
+    /** 接受连接的一方启动读线程,由读线程完成握手后再启动写线程,不阻塞接受其他连接. */
+    void startAccepted() {
+        reader.start();
+    }
+
+    private boolean acceptHandshake() {
+        try {
+            handshake();
+        } catch (IOException e) {
+            if (!closed.get()) {
+                Log.w("EventBus", "Rejected event bridge connection", e);
+            }
+            close();
+            return false;
+        }
+        bridge.onAuthenticated(this);
+        writer.start();
+        return true;
+    }
+
+    /** 交换协议版本和随机数,互相验证对方知道共享密钥.验证失败时抛出IOException. */
+    void handshake() throws IOException {
+        byte[] nonce = new byte[NONCE_BYTES];
+        RANDOM.nextBytes(nonce);
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+        out.writeInt(EventBridge.MAGIC);
+        out.writeInt(EventBridge.VERSION);
+        out.write(nonce);
+        out.flush();
+        if (in.readInt() != EventBridge.MAGIC || in.readInt() != EventBridge.VERSION) {
+            throw new IOException("Remote end is not a compatible event bridge");
+        }
+        byte[] peerNonce = new byte[NONCE_BYTES];
+        in.readFully(peerNonce);
+        if (Arrays.equals(nonce, peerNonce)) {
+            // 对端原样返回了本端的随机数,试图让本端替它计算证明.
+            throw new IOException("Event bridge handshake failed");
+        }
+        byte[] clientNonce = client ? nonce : peerNonce;
+        byte[] serverNonce = client ? peerNonce : nonce;
+        byte[] proof = proof(client, clientNonce, serverNonce);
+        out.write(proof);
+        out.flush();
+        byte[] peerProof = new byte[proof.length];
+        in.readFully(peerProof);
+        if (!MessageDigest.isEqual(peerProof, proof(!client, clientNonce, serverNonce))) {
+            throw new IOException("Event bridge peer failed authentication");
+        }
+        socket.setSoTimeout(0);
+    }
+
+    /** 按角色计算HMAC(密钥, 角色 + 客户端随机数 + 服务端随机数). */
+    private byte[] proof(boolean fromClient, byte[] clientNonce, byte[] serverNonce) throws IOException {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(bridge.secret, HMAC_ALGORITHM));
+            mac.update((byte) (fromClient ? 'C' : 'S'));
+            mac.update(clientNonce);
+            mac.update(serverNonce);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot compute event bridge handshake", e);
+        }
+    }
+
+    /** 当前线程是否是读线程且正在post该事件. */
+    boolean isReceiving(Object event) {
+        return Thread.currentThread() == reader && receiving == event;
+    }
+
+    /**
+     * 在发布线程上将事件放入发送队列,队列已满时按OverflowPolicy处理.
+     * 发布线程是某个连接的读线程时BLOCK策略也不阻塞,队列已满时丢弃事件:
+     * 两个进程在同一连接上互相应答时,各自的读线程如果等待对方的发送队列,双方都不再读取,形成死锁.
+     */
+    void send(Object event) {
+        if (closed.get()) {
+            return;
+        }
+        switch (bridge.overflowPolicy) {
+            case BLOCK:
+                if (Thread.currentThread() instanceof ReaderThread) {
+                    if (!queue.offer(event)) {
+                        bridge.droppedEvents.incrementAndGet();
+                    }
+                    break;
+                }
+                try {
+                    // 分段等待,连接关闭后不再阻塞发布线程.
+                    while (!queue.offer(event, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                        if (closed.get()) {
+                            return;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new EventBusException("Interrupted while waiting for bridge queue capacity", e);
+                }
+                break;
+            case DROP_NEWEST:
+                if (!queue.offer(event)) {
+                    bridge.droppedEvents.incrementAndGet();
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(event)) {
+                    if (queue.poll() != null) {
+                        bridge.droppedEvents.incrementAndGet();
+                    }
+                }
+                break;
+            case FAIL:
+                if (!queue.offer(event)) {
+                    throw new EventBusException("Bridge send queue is full (capacity "
+                            + bridge.queueCapacity + ")");
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown overflow policy: " + bridge.overflowPolicy);
+        }
+    }
+
+    private void writeLoop() {
+        int maxBatchSize = bridge.maxBatchSize;
+        List<Object> batch = new ArrayList<>(maxBatchSize);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(8 * 1024);
+        DataOutputStream frameOut = new DataOutputStream(frame);
+        try {
+            while (!closed.get()) {
+                // 阻塞等待第一个事件,之后取出队列中已有的事件一起发送.
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatchSize - 1);
+                int count = 0;
+                for (Object event : batch) {
+                    byte[] data = encode(event);
+                    if (data == null) {
+                        continue;
+                    }
+                    String className = event.getClass().getName();
+                    // 类名按UTF编码最多占3倍字节,再加上长度字段.
+                    int recordBytes = 2 + className.length() * 3 + 4 + data.length;
+                    if (recordBytes + 8 > bridge.maxFrameBytes) {
+                        Log.w("EventBus", "Dropping event " + className + " larger than the maximum frame size");
+                        continue;
+                    }
+                    if (count > 0 && frame.size() + recordBytes + 8 > bridge.maxFrameBytes) {
+                        writeFrame(frame, count);
+                        count = 0;
+                    }
+                    frameOut.writeUTF(className);
+                    frameOut.writeInt(data.length);
+                    frameOut.write(data);
+                    count ++;
+                }
+                batch.clear();
+                if (count > 0) {
+                    writeFrame(frame, count);
+                }
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            // close时中断写线程.
+        } catch (IOException e) {
+            if (!closed.get()) {
+                Log.w("EventBus", "Event bridge connection failed while sending", e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private byte[] encode(Object event) {
+        try {
+            return bridge.codec.encode(event);
+        } catch (IOException e) {
+            Log.w("EventBus", "Could not encode event " + event.getClass(), e);
+            return null;
+        }
+    }
+
+    private void writeFrame(ByteArrayOutputStream frame, int count) throws IOException {
+        out.writeInt(4 + frame.size());
+        out.writeInt(count);
+        frame.writeTo(out);
+        frame.reset();
+    }
+
+    private void readLoop() {
+        try {
+            while (!closed.get()) {
+                int length = in.readInt();
+                if (length < 4 || length > bridge.maxFrameBytes) {
+                    throw new IOException("Invalid frame length: " + length);
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i ++) {
+                    String className = in.readUTF();
+                    int size = in.readInt();
+                    if (size < 0 || size > length) {
+                        throw new IOException("Invalid event length: " + size);
+                    }
+                    byte[] data = new byte[size];
+                    in.readFully(data);
+                    Class<?> eventClass = bridge.resolveReceivedClass(className);
+                    if (eventClass != null) {
+                        post(eventClass, data);
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            // 对端关闭了连接.
+        } catch (IOException e) {
+            if (!closed.get()) {
+                Log.w("EventBus", "Event bridge connection failed while receiving", e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void post(Class<?> eventClass, byte[] data) {
+        Object event;
+        try {
+            event = bridge.codec.decode(eventClass, data);
+        } catch (IOException e) {
+            Log.w("EventBus", "Could not decode event " + eventClass, e);
+            return;
+        }
+        if (event == null || bridge.isClosed()) {
+            return;
+        }
+        receiving = event;
+        try {
+            bridge.eventBus.post(event);
+        } catch (RuntimeException e) {
+            // 例如开启了throwSubscriberException,异常不应断开连接.
+            Log.e("EventBus", "Could not post event " + eventClass + " received by the bridge", e);
+        } finally {
+            receiving = null;
+        }
+    }
+
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        bridge.onDisconnected(this);
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // 关闭过程中的异常不影响其他资源的释放.
+        }
+        writer.interrupt();
+        queue.clear();
+    }
+
+    /** 连接的读线程,收到的事件在该线程上post,据此识别不能阻塞的发送. */
+    private static final class ReaderThread extends Thread {
+        ReaderThread(Runnable runnable, String name) {
+            super(runnable, name);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package org.greenrobot.eventbus.bridge;
+
+import android.util.Log;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.EventCodec;
+import org.greenrobot.eventbus.EventTap;
+import org.greenrobot.eventbus.OverflowPolicy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在同一台机器的多个进程之间转发事件,使各进程中的EventBus收到相同的事件流.
+ * 进程之间通过本机回环地址的TCP连接通信,一个进程调用listen监听端口,其他进程调用connect连接,
+ * 每个连接都是双向的,一个进程也可以同时监听和连接多个进程.
+ * 本机的其他进程也能连接回环端口,因此连接双方必须通过共享密钥握手验证,未通过验证的连接不会收发事件;
+ * 默认的Java序列化解码也只允许实例化转发的类型,见EventBridgeBuilder.serializableTypes.
+ * 发送端只转发forward指定类型的事件,接收端也只接受这些类型,收到的事件在连接的读取线程上post到本地EventBus.
+ * 从某个连接收到的事件不会再发回该连接,但会继续转发给其他连接,因此可以组成以监听进程为中心的星形结构.
+ * 不要在两个进程之间建立多条连接或组成环,否则事件会被重复转发.
+ */
+public final class EventBridge implements Closeable {
+    static final int MAGIC = 0x45424252;
+    static final int VERSION = 2;
+
+    /** 收到的类名无法解析或不允许接收时缓存的标记. */
+    private static final Class<?> REJECTED = Void.class;
+
+    final EventBus eventBus;
+    final EventCodec codec;
+    final int queueCapacity;
+    final OverflowPolicy overflowPolicy;
+    final int maxBatchSize;
+    final int maxFrameBytes;
+    private final ClassLoader classLoader;
+    final byte[] secret;
+    private final Class<?>[] forwardedTypes;
+
+    /** Map<收到的事件类名, 事件类或REJECTED>. */
+    private final ConcurrentHashMap<String, Class<?>> receivedClasses = new ConcurrentHashMap<>();
+
+    private final CopyOnWriteArrayList<BridgePeer> peers = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<ServerSocket> serverSockets = new CopyOnWriteArrayList<>();
+    private final AtomicInteger peerIds = new AtomicInteger();
+
+    /** 因发送队列已满而被丢弃的事件数量. */
+    final AtomicLong droppedEvents = new AtomicLong();
+
+    private final BridgeTap tap;
+    private volatile boolean closed;
+
+    public static EventBridgeBuilder builder(EventBus eventBus) {
+        return new EventBridgeBuilder(eventBus);
+    }
+
+    EventBridge(EventBridgeBuilder builder) {
+        eventBus = builder.eventBus;
+        codec = builder.codec;
+        queueCapacity = builder.queueCapacity;
+        overflowPolicy = builder.overflowPolicy;
+        maxBatchSize = builder.maxBatchSize;
+        maxFrameBytes = builder.maxFrameBytes;
+        classLoader = builder.classLoader;
+        secret = builder.secret;
+        List<Class<?>> types = builder.forwardedTypes;
+        forwardedTypes = types.toArray(new Class<?>[types.size()]);
+        tap = new BridgeTap(this);
+        for (Class<?> forwardedType : forwardedTypes) {
+            eventBus.addTap(forwardedType, tap);
+        }
+    }
+
+    /**
+     * 在本机回环地址上监听端口,接受其他进程的连接.
+     * @param port 端口号,为0时由系统分配
+     * @return 实际监听的端口号
+     */
+    public int listen(int port) throws IOException {
+        checkOpen();
+        final ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+        serverSockets.add(serverSocket);
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept(serverSocket);
+            }
+        }, "EventBridge-acceptor-" + serverSocket.getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+        if (closed) {
+            serverSocket.close();
+        }
+        return serverSocket.getLocalPort();
+    }
+
+    private void accept(ServerSocket serverSocket) {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    Log.e("EventBus", "Event bridge stopped accepting connections", e);
+                }
+                return;
+            }
+            try {
+                // 握手在该连接的读线程上进行,验证通过后才加入转发的连接.
+                new BridgePeer(this, socket, peerIds.incrementAndGet(), false).startAccepted();
+            } catch (IOException e) {
+                closeQuietly(socket);
+                Log.w("EventBus", "Could not set up event bridge connection", e);
+            }
+        }
+    }
+
+    /** 连接本机上另一个进程监听的端口,握手验证通过后返回. */
+    public void connect(int port) throws IOException {
+        checkOpen();
+        Socket socket = new Socket(InetAddress.getByName(null), port);
+        BridgePeer peer;
+        try {
+            peer = new BridgePeer(this, socket, peerIds.incrementAndGet(), true);
+            peer.handshake();
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+        onAuthenticated(peer);
+        peer.start();
+    }
+
+    /** 连接通过握手验证后加入转发的连接. */
+    void onAuthenticated(BridgePeer peer) {
+        peers.add(peer);
+        // 与close并发时,close可能没有看到刚加入的连接.
+        if (closed) {
+            peer.close();
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // 连接已经失败,关闭时的异常不再需要处理.
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Event bridge is closed");
+        }
+    }
+
+    /** 当前连接的进程数量. */
+    public int getPeerCount() {
+        return peers.size();
+    }
+
+    /** 因发送队列已满而被丢弃的事件数量(DROP_NEWEST及DROP_OLDEST策略,以及BLOCK策略下在读线程上发送的事件). */
+    public long getDroppedEventCount() {
+        return droppedEvents.get();
+    }
+
+    /** 停止转发事件,关闭所有连接和监听端口.未发送的事件被丢弃. */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        eventBus.removeTap(tap);
+        for (ServerSocket serverSocket : serverSockets) {
+            try {
+                serverSocket.close();
+            } catch (IOException ignored) {
+                // 关闭过程中的异常不影响其他资源的释放.
+            }
+        }
+        for (BridgePeer peer : peers) {
+            peer.close();
+        }
+    }
+
+    /** 本地post的事件,转发给除事件来源以外的所有连接. */
+    void forward(Object event) {
+        if (peers.isEmpty()) {
+            return;
+        }
+        for (BridgePeer peer : peers) {
+            if (!peer.isReceiving(event)) {
+                peer.send(event);
+            }
+        }
+    }
+
+    private boolean isForwarded(Class<?> eventClass) {
+        for (Class<?> forwardedType : forwardedTypes) {
+            if (forwardedType.isAssignableFrom(eventClass)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解析收到的事件类名.
+     * @return 类不存在或不是forward指定的类型时返回null
+     */
+    Class<?> resolveReceivedClass(String className) {
+        Class<?> eventClass = receivedClasses.get(className);
+        if (eventClass == null) {
+            try {
+                // 先检查类型再解码,避免解码未允许的类.
+                eventClass = Class.forName(className, false, classLoader);
+                if (!isForwarded(eventClass)) {
+                    Log.w("EventBus", "Ignoring events of type " + className + " not forwarded by the bridge");
+                    eventClass = REJECTED;
+                }
+            } catch (ClassNotFoundException e) {
+                Log.w("EventBus", "Ignoring events of unknown type " + className);
+                eventClass = REJECTED;
+            }
+            receivedClasses.put(className, eventClass);
+        }
+        return eventClass != REJECTED ? eventClass : null;
+    }
+
+    void onDisconnected(BridgePeer peer) {
+        peers.remove(peer);
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /** 在发布线程上接收本地post的转发类型的事件. */
+    static final class BridgeTap implements EventTap {
+        private final EventBridge bridge;
+
+        BridgeTap(EventBridge bridge) {
+            this.bridge = bridge;
+        }
+
+        @Override
+        public void onEvent(Object event) {
+            bridge.forward(event);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.greenrobot.eventbus.bridge;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.EventCodec;
+import org.greenrobot.eventbus.OverflowPolicy;
+import org.greenrobot.eventbus.SerializableEventCodec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EventBridge的构建器.
+ */
+@SuppressWarnings("unused")
+public class EventBridgeBuilder {
+    final EventBus eventBus;
+
+    /** 需要在进程间转发的事件类型,事件是其中任一类型的实例时转发. */
+    final List<Class<?>> forwardedTypes = new ArrayList<>();
+
+    /** 事件的序列化方式,为null时使用只允许转发类型的SerializableEventCodec. */
+    EventCodec codec;
+
+    /** 默认的SerializableEventCodec解码时额外允许的类型,例如事件字段的类型. */
+    final List<Class<?>> serializableTypes = new ArrayList<>();
+
+    /** 连接双方通过该密钥互相验证身份,未通过验证的连接不会收发事件. */
+    byte[] secret;
+
+    /** 每个连接的发送队列容量及队列已满时的处理策略. */
+    int queueCapacity = 1024;
+    OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+    /** 一个数据帧最多包含的事件数量. */
+    int maxBatchSize = 64;
+
+    /** 一个数据帧的最大字节数,超过时认为对端数据有误并断开连接. */
+    int maxFrameBytes = 16 * 1024 * 1024;
+
+    /** 解析收到的事件类名使用的ClassLoader. */
+    ClassLoader classLoader = EventBridgeBuilder.class.getClassLoader();
+
+    EventBridgeBuilder(EventBus eventBus) {
+        if (eventBus == null) {
+            throw new NullPointerException("eventBus must not be null");
+        }
+        this.eventBus = eventBus;
+    }
+
+    /**
+     * Forwards events that are instances of the given type (including subclasses and implementations) to all
+     * connected processes. Only these types are accepted when received from other processes as well.
+     */
+    public EventBridgeBuilder forward(Class<?> eventType) {
+        if (eventType == null) {
+            throw new NullPointerException("eventType must not be null");
+        }
+        if (!forwardedTypes.contains(eventType)) {
+            forwardedTypes.add(eventType);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the codec used to encode and decode events (default: Java serialization that only
+     * instantiates forwarded types and types given to {@link #serializableTypes(Class[])}).
+     * Received data comes from another process, so a custom codec must not instantiate arbitrary classes.
+     */
+    public EventBridgeBuilder codec(EventCodec codec) {
+        if (codec == null) {
+            throw new NullPointerException("codec must not be null");
+        }
+        this.codec = codec;
+        return this;
+    }
+
+    /**
+     * Allows the default codec to also decode instances of the given types, e.g. classes of event fields.
+     * Strings, boxed primitives and primitive arrays are always allowed.
+     */
+    public EventBridgeBuilder serializableTypes(Class<?>... types) {
+        for (Class<?> type : types) {
+            if (type == null) {
+                throw new NullPointerException("type must not be null");
+            }
+            serializableTypes.add(type);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the shared secret (at least 16 bytes) that all connected processes must use (required).
+     * Peers prove knowledge of the secret with an HMAC challenge-response before any event is exchanged,
+     * so other local processes cannot inject or receive events.
+     */
+    public EventBridgeBuilder secret(byte[] secret) {
+        if (secret == null) {
+            throw new NullPointerException("secret must not be null");
+        }
+        if (secret.length < 16) {
+            throw new IllegalArgumentException("Secret must have at least 16 bytes: " + secret.length);
+        }
+        this.secret = secret.clone();
+        return this;
+    }
+
+    /**
+     * Bounds the per-connection send queue (default: 1024 events). When a peer cannot keep up, events are
+     * handled according to the overflow policy on the posting thread (default: {@link OverflowPolicy#BLOCK}).
+     * Events posted on a bridge reader thread (e.g. replies sent from subscribers of received events) never
+     * block; with BLOCK they are dropped when the queue is full, so two peers cannot wait on each other.
+     */
+    public EventBridgeBuilder sendQueue(int capacity, OverflowPolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + capacity);
+        }
+        if (policy == null) {
+            throw new NullPointerException("policy must not be null");
+        }
+        queueCapacity = capacity;
+        overflowPolicy = policy;
+        return this;
+    }
+
+    /** Sets the maximum number of events written in one frame (default: 64). */
+    public EventBridgeBuilder maxBatchSize(int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /** Sets the maximum size of a received frame; larger frames close the connection (default: 16 MB). */
+    public EventBridgeBuilder maxFrameBytes(int maxFrameBytes) {
+        if (maxFrameBytes <= 0) {
+            throw new IllegalArgumentException("Frame size must be positive: " + maxFrameBytes);
+        }
+        this.maxFrameBytes = maxFrameBytes;
+        return this;
+    }
+
+    /** Sets the class loader used to resolve received event classes. */
+    public EventBridgeBuilder classLoader(ClassLoader classLoader) {
+        if (classLoader == null) {
+            throw new NullPointerException("classLoader must not be null");
+        }
+        this.classLoader = classLoader;
+        return this;
+    }
+
+    /** Builds the bridge and starts observing events posted to the bus. */
+    public EventBridge build() {
+        if (forwardedTypes.isEmpty()) {
+            throw new IllegalArgumentException("No event types to forward");
+        }
+        if (secret == null) {
+            throw new IllegalArgumentException("No shared secret set");
+        }
+        if (codec == null) {
+            List<Class<?>> allowed = new ArrayList<>(forwardedTypes);
+            allowed.addAll(serializableTypes);
+            codec = new SerializableEventCodec(allowed.toArray(new Class<?>[allowed.size()]));
+        }
+        return new EventBridge(this);
+    }
+}
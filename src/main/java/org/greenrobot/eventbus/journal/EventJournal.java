@@ -0,0 +1,324 @@
+package org.greenrobot.eventbus.journal;
+
+import android.util.Log;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.EventBusException;
+import org.greenrobot.eventbus.EventCodec;
+import org.greenrobot.eventbus.EventTap;
+import org.greenrobot.eventbus.OverflowPolicy;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 将post的指定类型事件按顺序记录到分段的内存映射文件中,用于崩溃恢复和重现线上问题.
+ * 发布线程只把事件和时间戳放入有界队列,由一个写线程编码后追加到当前分段,分段写满时创建新的分段.
+ * 每条记录有一个连续递增的偏移量,记录的时间戳为纳秒精度的系统时间.
+ * 通过replay读取日志,将一段偏移量或时间范围内的事件重新post到另一个EventBus.
+ * 内存映射的写入在进程崩溃后仍然保留,close时才强制写入存储设备.
+ */
+public final class EventJournal implements Closeable {
+    /** close时唤醒写线程的标记,只用于缩短等待,被DROP_OLDEST丢弃也不影响写线程结束. */
+    private static final PendingRecord WAKE_UP = new PendingRecord(null, 0);
+
+    /** 写线程在队列为空时检查是否已关闭的间隔,BLOCK策略的发布线程也按此间隔检查是否已关闭或写入失败. */
+    private static final long POLL_MILLIS = 100;
+
+    private final EventBus eventBus;
+    private final EventCodec codec;
+    private final File directory;
+    private final int segmentBytes;
+    private final OverflowPolicy overflowPolicy;
+    private final int queueCapacity;
+
+    private final ArrayBlockingQueue<PendingRecord> queue;
+    private final JournalTap tap;
+    private final Thread writer;
+
+    /** 时间戳基准:创建时的系统时间(纳秒)和对应的System.nanoTime(),之后的时间戳按nanoTime推算,保证单调. */
+    private final long baseTimeNanos;
+    private final long baseNanoTime;
+
+    /** 当前写入的分段,只由写线程访问. */
+    private JournalSegment segment;
+
+    /** 下一条记录的偏移量,由写线程更新. */
+    private volatile long nextOffset;
+
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private volatile boolean closed;
+
+    /** 写入失败后不再记录事件. */
+    private volatile boolean failed;
+
+    public static EventJournalBuilder builder(EventBus eventBus, File directory) {
+        return new EventJournalBuilder(eventBus, directory);
+    }
+
+    /** 读取directory中的日志,重新post其中的事件. */
+    public static EventJournalReplay replay(File directory) {
+        return new EventJournalReplay(directory);
+    }
+
+    EventJournal(EventJournalBuilder builder) throws IOException {
+        eventBus = builder.eventBus;
+        codec = builder.codec;
+        directory = builder.directory;
+        segmentBytes = builder.segmentBytes;
+        overflowPolicy = builder.overflowPolicy;
+        queueCapacity = builder.queueCapacity;
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        segment = openLastSegment();
+        nextOffset = segment.nextOffset();
+        baseTimeNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        baseNanoTime = System.nanoTime();
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "EventJournal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        tap = new JournalTap(this);
+        for (Class<?> recordedType : builder.recordedTypes) {
+            eventBus.addTap(recordedType, tap);
+        }
+    }
+
+    /** 按起始偏移量排序的分段文件. */
+    static File[] listSegments(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        List<File> segments = new ArrayList<>();
+        for (File file : files) {
+            if (JournalSegment.baseOffsetOf(file) >= 0) {
+                segments.add(file);
+            }
+        }
+        File[] sorted = segments.toArray(new File[segments.size()]);
+        // 文件名为固定长度的偏移量,按名称排序即按偏移量排序.
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /** 打开最后一个有效的分段并定位到最后一条有效记录之后,没有有效分段时创建第一个分段. */
+    private JournalSegment openLastSegment() throws IOException {
+        File[] files = listSegments(directory);
+        for (int i = files.length - 1; i >= 0; i --) {
+            JournalSegment last = JournalSegment.open(files[i], true);
+            if (last != null) {
+                last.seekToEnd();
+                return last;
+            }
+            Log.w("EventBus", "Ignoring invalid journal segment " + files[i]);
+        }
+        return JournalSegment.create(directory, 0, segmentBytes);
+    }
+
+    /** 下一条记录的偏移量,可以作为之后replay的起点. */
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    /** 因队列已满而未被记录的事件数量. */
+    public long getDroppedEventCount() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * 停止记录,等待已经入队的事件写入完成后将日志强制写入存储设备.
+     * 写线程通过closed标记结束,不依赖队列中的结束标记,因此队列已满或写线程已经失败时也不会阻塞.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        eventBus.removeTap(tap);
+        // 队列已满时写线程不会在等待,不需要唤醒.
+        queue.offer(WAKE_UP);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.interrupt();
+        }
+    }
+
+    /** 在发布线程上记录事件,只做入队. */
+    void record(Object event) {
+        if (closed || failed) {
+            return;
+        }
+        PendingRecord pendingRecord = new PendingRecord(event,
+                baseTimeNanos + (System.nanoTime() - baseNanoTime));
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    // 分段等待,关闭或写入失败后写线程不再取出记录,不能继续阻塞发布线程.
+                    while (!queue.offer(pendingRecord, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        if (closed || failed) {
+                            return;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new EventBusException("Interrupted while waiting for journal queue capacity", e);
+                }
+                break;
+            case DROP_NEWEST:
+                if (!queue.offer(pendingRecord)) {
+                    droppedEvents.incrementAndGet();
+                }
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(pendingRecord)) {
+                    PendingRecord oldest = queue.poll();
+                    if (oldest != null && oldest != WAKE_UP) {
+                        droppedEvents.incrementAndGet();
+                    }
+                }
+                break;
+            case FAIL:
+                if (!queue.offer(pendingRecord)) {
+                    throw new EventBusException("Journal queue is full (capacity " + queueCapacity + ")");
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown overflow policy: " + overflowPolicy);
+        }
+    }
+
+    /**
+     * 写线程:批量取出记录写入分段,关闭后写完队列中剩余的记录再结束.
+     * 单条记录编码失败只跳过该记录;写入分段失败(包括运行时异常)时停止记录,
+     * 并清空队列释放BLOCK策略下等待的发布线程.
+     */
+    private void writeLoop() {
+        List<PendingRecord> batch = new ArrayList<>(256);
+        Map<Class<?>, byte[]> classNames = new HashMap<>();
+        boolean completed = false;
+        try {
+            while (true) {
+                // 先读closed再取记录:关闭之后取不到记录时,之前入队的记录都已经写完.
+                boolean closing = closed;
+                PendingRecord first = closing ? queue.poll() : queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closing) {
+                        break;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, 255);
+                for (PendingRecord pendingRecord : batch) {
+                    if (pendingRecord == WAKE_UP) {
+                        continue;
+                    }
+                    Class<?> eventClass = pendingRecord.event.getClass();
+                    byte[] className = classNames.get(eventClass);
+                    if (className == null) {
+                        className = eventClass.getName().getBytes(JournalSegment.UTF_8);
+                        classNames.put(eventClass, className);
+                    }
+                    append(pendingRecord, className);
+                }
+                batch.clear();
+                nextOffset = segment.nextOffset();
+            }
+            completed = true;
+        } catch (InterruptedException e) {
+            // close等待时被中断,不再写入剩余的事件.
+            completed = true;
+        } catch (IOException e) {
+            Log.e("EventBus", "Event journal stopped after a write failure", e);
+        } catch (RuntimeException e) {
+            Log.e("EventBus", "Event journal stopped after a write failure", e);
+        } finally {
+            if (!completed) {
+                failed = true;
+                // 释放BLOCK策略下等待队列空位的发布线程.
+                queue.clear();
+            }
+            try {
+                nextOffset = segment.nextOffset();
+                segment.force();
+            } catch (RuntimeException e) {
+                Log.e("EventBus", "Could not force the event journal to storage", e);
+            }
+        }
+    }
+
+    private void append(PendingRecord pendingRecord, byte[] className) throws IOException {
+        byte[] data;
+        try {
+            data = codec.encode(pendingRecord.event);
+        } catch (IOException e) {
+            Log.w("EventBus", "Could not encode event " + pendingRecord.event.getClass(), e);
+            return;
+        } catch (RuntimeException e) {
+            // 编码失败只影响这一条记录.
+            Log.w("EventBus", "Could not encode event " + pendingRecord.event.getClass(), e);
+            return;
+        }
+        if (data == null) {
+            return;
+        }
+        if (segment.append(pendingRecord.timestampNanos, className, data)) {
+            return;
+        }
+        if (JournalSegment.HEADER_SIZE + JournalSegment.recordSize(className, data) + 4 > segmentBytes) {
+            Log.w("EventBus", "Dropping event " + pendingRecord.event.getClass()
+                    + " larger than the journal segment size");
+            return;
+        }
+        // 当前分段已满,写入存储设备后切换到新的分段.
+        // 旧分段的内存映射无法显式释放,只能在失去引用后由GC回收,见EventJournalBuilder.segmentBytes.
+        segment.force();
+        segment = JournalSegment.create(directory, segment.nextOffset(), segmentBytes);
+        segment.append(pendingRecord.timestampNanos, className, data);
+    }
+
+    /** 等待写入的事件及其post时间. */
+    private static final class PendingRecord {
+        final Object event;
+        final long timestampNanos;
+
+        PendingRecord(Object event, long timestampNanos) {
+            this.event = event;
+            this.timestampNanos = timestampNanos;
+        }
+    }
+
+    /** 在发布线程上接收记录类型的事件. */
+    static final class JournalTap implements EventTap {
+        private final EventJournal journal;
+
+        JournalTap(EventJournal journal) {
+            this.journal = journal;
+        }
+
+        @Override
+        public void onEvent(Object event) {
+            journal.record(event);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.greenrobot.eventbus.journal;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.EventCodec;
+import org.greenrobot.eventbus.OverflowPolicy;
+import org.greenrobot.eventbus.SerializableEventCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EventJournal的构建器.
+ */
+@SuppressWarnings("unused")
+public class EventJournalBuilder {
+    final EventBus eventBus;
+    final File directory;
+
+    /** 需要记录的事件类型,事件是其中任一类型的实例时记录. */
+    final List<Class<?>> recordedTypes = new ArrayList<>();
+
+    /** 事件的序列化方式. */
+    EventCodec codec = new SerializableEventCodec();
+
+    /** 每个分段文件的大小. */
+    int segmentBytes = 16 * 1024 * 1024;
+
+    /** 等待写入的事件队列容量及队列已满时的处理策略,默认丢弃新事件,不阻塞发布线程. */
+    int queueCapacity = 8192;
+    OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+    EventJournalBuilder(EventBus eventBus, File directory) {
+        if (eventBus == null || directory == null) {
+            throw new NullPointerException("eventBus and directory must not be null");
+        }
+        this.eventBus = eventBus;
+        this.directory = directory;
+    }
+
+    /** Records events that are instances of the given type (including subclasses and implementations). */
+    public EventJournalBuilder record(Class<?> eventType) {
+        if (eventType == null) {
+            throw new NullPointerException("eventType must not be null");
+        }
+        if (!recordedTypes.contains(eventType)) {
+            recordedTypes.add(eventType);
+        }
+        return this;
+    }
+
+    /** Sets the codec used to encode recorded events (default: Java serialization). */
+    public EventJournalBuilder codec(EventCodec codec) {
+        if (codec == null) {
+            throw new NullPointerException("codec must not be null");
+        }
+        this.codec = codec;
+        return this;
+    }
+
+    /**
+     * Sets the size of each memory-mapped segment file (default: 16 MB). Java offers no way to unmap a
+     * file explicitly, so the mapping of every full segment stays in the address space until its
+     * buffer is garbage collected, and on Windows the segment file cannot be deleted until then. A
+     * long-running journal with small segments therefore accumulates many stale mappings; prefer
+     * larger segments over frequent rolls.
+     */
+    public EventJournalBuilder segmentBytes(int segmentBytes) {
+        if (segmentBytes < 4096) {
+            throw new IllegalArgumentException("Segment size must be at least 4096 bytes: " + segmentBytes);
+        }
+        this.segmentBytes = segmentBytes;
+        return this;
+    }
+
+    /**
+     * Bounds the queue of events waiting to be written (default: 8192 events). When the writer cannot keep up,
+     * events are handled according to the overflow policy on the posting thread (default:
+     * {@link OverflowPolicy#DROP_NEWEST}, so posting never blocks on the journal).
+     */
+    public EventJournalBuilder queue(int capacity, OverflowPolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + capacity);
+        }
+        if (policy == null) {
+            throw new NullPointerException("policy must not be null");
+        }
+        queueCapacity = capacity;
+        overflowPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Opens the journal, continuing after the last valid record of an existing journal in the directory, and
+     * starts recording events posted to the bus.
+     */
+    public EventJournal build() throws IOException {
+        if (recordedTypes.isEmpty()) {
+            throw new IllegalArgumentException("No event types to record");
+        }
+        return new EventJournal(this);
+    }
+}
@@ -0,0 +1,172 @@
+package org.greenrobot.eventbus.journal;
+
+import android.util.Log;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.EventBusException;
+import org.greenrobot.eventbus.EventCodec;
+import org.greenrobot.eventbus.SerializableEventCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读取事件日志,将一段偏移量或时间范围内的事件按记录顺序重新post到EventBus.
+ * 默认以最快速度post,也可以按记录时的时间间隔post.
+ * 通常post到新建的EventBus,在原EventBus上replay时,如果仍在记录,replay的事件会被再次记录.
+ */
+@SuppressWarnings("unused")
+public final class EventJournalReplay {
+    private final File directory;
+    private EventCodec codec = new SerializableEventCodec();
+    private ClassLoader classLoader = EventJournalReplay.class.getClassLoader();
+    private long fromOffset;
+    private long toOffset = Long.MAX_VALUE;
+    private long fromTimeNanos = Long.MIN_VALUE;
+    private long toTimeNanos = Long.MAX_VALUE;
+    private boolean originalPace;
+
+    EventJournalReplay(File directory) {
+        if (directory == null) {
+            throw new NullPointerException("directory must not be null");
+        }
+        this.directory = directory;
+    }
+
+    /** Sets the codec the journal was recorded with (default: Java serialization). */
+    public EventJournalReplay codec(EventCodec codec) {
+        if (codec == null) {
+            throw new NullPointerException("codec must not be null");
+        }
+        this.codec = codec;
+        return this;
+    }
+
+    /** Sets the class loader used to resolve recorded event classes. */
+    public EventJournalReplay classLoader(ClassLoader classLoader) {
+        if (classLoader == null) {
+            throw new NullPointerException("classLoader must not be null");
+        }
+        this.classLoader = classLoader;
+        return this;
+    }
+
+    /** Replays only records with offsets in [fromInclusive, toExclusive), see {@link EventJournal#getNextOffset()}. */
+    public EventJournalReplay offsets(long fromInclusive, long toExclusive) {
+        if (fromInclusive < 0 || toExclusive < fromInclusive) {
+            throw new IllegalArgumentException("Invalid offset range: " + fromInclusive + ".." + toExclusive);
+        }
+        fromOffset = fromInclusive;
+        toOffset = toExclusive;
+        return this;
+    }
+
+    /** Replays only events posted in [fromMillis, toMillis) (wall clock, as {@link System#currentTimeMillis()}). */
+    public EventJournalReplay timeRange(long fromMillis, long toMillis) {
+        if (toMillis < fromMillis) {
+            throw new IllegalArgumentException("Invalid time range: " + fromMillis + ".." + toMillis);
+        }
+        fromTimeNanos = TimeUnit.MILLISECONDS.toNanos(fromMillis);
+        toTimeNanos = TimeUnit.MILLISECONDS.toNanos(toMillis);
+        return this;
+    }
+
+    /**
+     * Posts events with the time gaps they were originally posted with instead of as fast as possible
+     * (default: false).
+     */
+    public EventJournalReplay originalPace(boolean originalPace) {
+        this.originalPace = originalPace;
+        return this;
+    }
+
+    /**
+     * 在当前线程上post日志中的事件.无法解析或解码的事件被跳过.
+     * @return post的事件数量
+     */
+    public long replayTo(EventBus eventBus) throws IOException {
+        File[] files = EventJournal.listSegments(directory);
+        Map<String, Class<?>> classes = new HashMap<>();
+        JournalRecord record = new JournalRecord();
+        long posted = 0;
+        long firstTimestamp = 0;
+        long startNanoTime = 0;
+        for (int i = 0; i < files.length; i ++) {
+            // 下一个分段的起始偏移量不大于fromOffset时,整个分段都在范围之前.
+            if (i + 1 < files.length && JournalSegment.baseOffsetOf(files[i + 1]) <= fromOffset) {
+                continue;
+            }
+            JournalSegment segment = JournalSegment.open(files[i], false);
+            if (segment == null) {
+                Log.w("EventBus", "Skipping invalid journal segment " + files[i]);
+                continue;
+            }
+            if (segment.baseOffset >= toOffset) {
+                break;
+            }
+            while (segment.next(record)) {
+                if (record.offset >= toOffset) {
+                    return posted;
+                }
+                if (record.offset < fromOffset || record.timestampNanos < fromTimeNanos
+                        || record.timestampNanos >= toTimeNanos) {
+                    continue;
+                }
+                Object event = decode(record, classes);
+                if (event == null) {
+                    continue;
+                }
+                if (originalPace) {
+                    if (posted == 0) {
+                        firstTimestamp = record.timestampNanos;
+                        startNanoTime = System.nanoTime();
+                    } else {
+                        awaitOriginalTime(startNanoTime + (record.timestampNanos - firstTimestamp));
+                    }
+                }
+                eventBus.post(event);
+                posted ++;
+            }
+        }
+        return posted;
+    }
+
+    private Object decode(JournalRecord record, Map<String, Class<?>> classes) {
+        Class<?> eventClass = classes.get(record.className);
+        if (eventClass == null) {
+            if (classes.containsKey(record.className)) {
+                return null;
+            }
+            try {
+                eventClass = Class.forName(record.className, true, classLoader);
+            } catch (ClassNotFoundException e) {
+                Log.w("EventBus", "Skipping recorded events of unknown type " + record.className);
+            }
+            classes.put(record.className, eventClass);
+            if (eventClass == null) {
+                return null;
+            }
+        }
+        try {
+            return codec.decode(eventClass, record.data);
+        } catch (IOException e) {
+            Log.w("EventBus", "Could not decode recorded event at offset " + record.offset, e);
+            return null;
+        }
+    }
+
+    private static void awaitOriginalTime(long dueNanoTime) {
+        long remaining = dueNanoTime - System.nanoTime();
+        if (remaining > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EventBusException("Interrupted while replaying events", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.greenrobot.eventbus.journal;
+
+/**
+ * 从事件日志中读取的一条记录,读取时重复使用同一个对象.
+ */
+final class JournalRecord {
+    long offset;
+    long timestampNanos;
+    String className;
+    byte[] classNameBytes;
+    byte[] data;
+}
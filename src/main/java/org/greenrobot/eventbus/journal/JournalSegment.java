@@ -0,0 +1,235 @@
+package org.greenrobot.eventbus.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * 事件日志的一个分段文件.
+ * 文件创建时即扩展到固定大小并整体内存映射,之后只在末尾追加记录.
+ * 文件头格式为: [int MAGIC][int VERSION][long 第一条记录的偏移量],
+ * 每条记录格式为: [int 内容长度][int 内容CRC32][long 时间戳(纳秒)][short 类名长度][类名][事件数据],
+ * 读取时遇到长度为0或校验失败的记录即认为分段结束,因此写入中途崩溃只会丢失最后一条记录.
+ * 每条记录之后都写入4个字节的0作为结束标记,崩溃后从无效记录处继续追加时,之前残留的记录不会被读到.
+ * 记录的偏移量为分段起始偏移量加上记录在分段中的序号.
+ */
+final class JournalSegment {
+    static final String SUFFIX = ".journal";
+    private static final int MAGIC = 0x45424a4c;
+    private static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 8;
+    private static final int RECORD_FIXED_SIZE = 10;
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    final File file;
+    final long baseOffset;
+    private final MappedByteBuffer buffer;
+    private final CRC32 crc = new CRC32();
+
+    /** 读写记录内容使用的缓冲区,scratchLength为最近一次读取的记录内容长度. */
+    private byte[] scratch;
+    private int scratchLength;
+
+    /** 分段中的记录数量,写入时为已追加的数量,读取时为已读取的数量. */
+    private int count;
+
+    private JournalSegment(File file, long baseOffset, MappedByteBuffer buffer) {
+        this.file = file;
+        this.baseOffset = baseOffset;
+        this.buffer = buffer;
+    }
+
+    static File fileFor(File directory, long baseOffset) {
+        return new File(directory, String.format("%020d", baseOffset) + SUFFIX);
+    }
+
+    /** 从文件名解析分段的起始偏移量,不是分段文件时返回-1. */
+    static long baseOffsetOf(File file) {
+        String name = file.getName();
+        if (!name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** 创建新的分段文件,同名的无效分段文件会被覆盖. */
+    static JournalSegment create(File directory, long baseOffset, int size) throws IOException {
+        File file = fileFor(directory, baseOffset);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+        MappedByteBuffer buffer = map(file, size, true);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(baseOffset);
+        return new JournalSegment(file, baseOffset, buffer);
+    }
+
+    /**
+     * 打开已有的分段文件,position位于第一条记录.
+     * @return 文件头无效时返回null
+     */
+    static JournalSegment open(File file, boolean writable) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return null;
+        }
+        MappedByteBuffer buffer = map(file, file.length(), writable);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        return new JournalSegment(file, buffer.getLong(), buffer);
+    }
+
+    /** 跳过所有有效记录,之后的append从最后一条有效记录之后开始写入. */
+    void seekToEnd() {
+        while (skip()) {
+            count ++;
+        }
+    }
+
+    /** 下一条追加或读取的记录的偏移量. */
+    long nextOffset() {
+        return baseOffset + count;
+    }
+
+    static int recordSize(byte[] className, byte[] data) {
+        return RECORD_HEADER_SIZE + RECORD_FIXED_SIZE + className.length + data.length;
+    }
+
+    /**
+     * 追加一条记录.先写内容、校验值和其后的结束标记,最后写长度,读取时长度非0才认为记录存在.
+     * @return 剩余空间不足时返回false,此时没有写入任何内容
+     */
+    boolean append(long timestampNanos, byte[] className, byte[] data) {
+        int length = RECORD_FIXED_SIZE + className.length + data.length;
+        // 保留4个字节作为结束标记.
+        if (buffer.remaining() < RECORD_HEADER_SIZE + length + 4) {
+            return false;
+        }
+        byte[] content = scratch(length);
+        putLong(content, 0, timestampNanos);
+        content[8] = (byte) (className.length >>> 8);
+        content[9] = (byte) className.length;
+        System.arraycopy(className, 0, content, RECORD_FIXED_SIZE, className.length);
+        System.arraycopy(data, 0, content, RECORD_FIXED_SIZE + className.length, data.length);
+        crc.reset();
+        crc.update(content, 0, length);
+        int start = buffer.position();
+        buffer.position(start + 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(content, 0, length);
+        // 覆盖崩溃前残留的记录,否则与残留记录长度相同时会接着读到崩溃前的旧记录.
+        buffer.putInt(buffer.position(), 0);
+        buffer.putInt(start, length);
+        count ++;
+        return true;
+    }
+
+    /** 将已写入的内容刷到存储设备. */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * 读取下一条记录.
+     * @return 分段结束时返回false
+     */
+    boolean next(JournalRecord record) {
+        if (!skip()) {
+            return false;
+        }
+        byte[] content = scratch;
+        record.offset = baseOffset + count;
+        record.timestampNanos = getLong(content, 0);
+        int nameLength = ((content[8] & 0xff) << 8) | (content[9] & 0xff);
+        // 相邻记录多为同一事件类,类名相同时复用已解码的字符串.
+        if (!regionEquals(content, RECORD_FIXED_SIZE, nameLength, record.classNameBytes)) {
+            record.classNameBytes = Arrays.copyOfRange(content, RECORD_FIXED_SIZE,
+                    RECORD_FIXED_SIZE + nameLength);
+            record.className = new String(record.classNameBytes, UTF_8);
+        }
+        record.data = Arrays.copyOfRange(content, RECORD_FIXED_SIZE + nameLength, scratchLength);
+        count ++;
+        return true;
+    }
+
+    /** 校验并跳过下一条记录,内容读入scratch.记录无效时position保持不变并返回false. */
+    private boolean skip() {
+        int start = buffer.position();
+        if (buffer.remaining() < RECORD_HEADER_SIZE) {
+            return false;
+        }
+        int length = buffer.getInt(start);
+        if (length < RECORD_FIXED_SIZE || length > buffer.remaining() - RECORD_HEADER_SIZE) {
+            return false;
+        }
+        int checksum = buffer.getInt(start + 4);
+        byte[] content = scratch(length);
+        buffer.position(start + RECORD_HEADER_SIZE);
+        buffer.get(content, 0, length);
+        crc.reset();
+        crc.update(content, 0, length);
+        int nameLength = ((content[8] & 0xff) << 8) | (content[9] & 0xff);
+        if ((int) crc.getValue() != checksum || RECORD_FIXED_SIZE + nameLength > length) {
+            buffer.position(start);
+            return false;
+        }
+        scratchLength = length;
+        return true;
+    }
+
+    private byte[] scratch(int length) {
+        if (scratch == null || scratch.length < length) {
+            scratch = new byte[Math.max(length, 256)];
+        }
+        return scratch;
+    }
+
+    private static boolean regionEquals(byte[] content, int offset, int length, byte[] other) {
+        if (other == null || other.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i ++) {
+            if (content[offset + i] != other[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void putLong(byte[] target, int offset, long value) {
+        for (int i = 7; i >= 0; i --) {
+            target[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long getLong(byte[] source, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i ++) {
+            value = (value << 8) | (source[offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    private static MappedByteBuffer map(File file, long size, boolean writable) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, writable ? "rw" : "r");
+        try {
+            // 映射建立后即使关闭文件也仍然有效.
+            return randomAccessFile.getChannel().map(writable ? FileChannel.MapMode.READ_WRITE
+                    : FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.greenrobot.eventbus.meta;
+
+import org.greenrobot.eventbus.EventBusException;
+import org.greenrobot.eventbus.SubscriberInvoker;
+import org.greenrobot.eventbus.SubscriberMethod;
+import org.greenrobot.eventbus.ThreadMode;
+
+import java.lang.reflect.Method;
+
+/**
+ * 生成的订阅者信息类的基类.
+ */
+public abstract class AbstractSubscriberInfo implements SubscriberInfo {
+    private final Class<?> subscriberClass;
+    private final SubscriberInfo superSubscriberInfo;
+    private final boolean shouldCheckSuperclass;
+
+    protected AbstractSubscriberInfo(Class<?> subscriberClass, SubscriberInfo superSubscriberInfo,
+                                     boolean shouldCheckSuperclass) {
+        this.subscriberClass = subscriberClass;
+        this.superSubscriberInfo = superSubscriberInfo;
+        this.shouldCheckSuperclass = shouldCheckSuperclass;
+    }
+
+    @Override
+    public Class<?> getSubscriberClass() {
+        return subscriberClass;
+    }
+
+    @Override
+    public SubscriberInfo getSuperSubscriberInfo() {
+        return superSubscriberInfo;
+    }
+
+    @Override
+    public boolean shouldCheckSuperclass() {
+        return shouldCheckSuperclass;
+    }
+
+    /** 根据方法名和事件类型直接定位订阅函数,不需要遍历订阅者类的全部方法. */
+    protected SubscriberMethod createSubscriberMethod(String methodName, Class<?> eventType,
+                                                      ThreadMode threadMode, int priority,
+                                                      boolean sticky, boolean conflate,
+                                                      SubscriberInvoker invoker) {
+        try {
+            Method method = subscriberClass.getDeclaredMethod(methodName, eventType);
+            return new SubscriberMethod(method, eventType, threadMode, priority, sticky, conflate,
+                    invoker);
+        } catch (NoSuchMethodException e) {
+            throw new EventBusException("Could not find subscriber method in " + subscriberClass +
+                    ". Maybe a missing ProGuard rule?", e);
+        }
+    }
+}
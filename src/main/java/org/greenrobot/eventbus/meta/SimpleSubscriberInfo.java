@@ -0,0 +1,28 @@
+package org.greenrobot.eventbus.meta;
+
+import org.greenrobot.eventbus.SubscriberMethod;
+
+/**
+ * 注解处理器生成的索引类使用的订阅者信息实现.
+ */
+public class SimpleSubscriberInfo extends AbstractSubscriberInfo {
+    private final SubscriberMethodInfo[] methodInfos;
+
+    public SimpleSubscriberInfo(Class<?> subscriberClass, SubscriberInfo superSubscriberInfo,
+                                boolean shouldCheckSuperclass, SubscriberMethodInfo[] methodInfos) {
+        super(subscriberClass, superSubscriberInfo, shouldCheckSuperclass);
+        this.methodInfos = methodInfos;
+    }
+
+    @Override
+    public synchronized SubscriberMethod[] getSubscriberMethods() {
+        int length = methodInfos.length;
+        SubscriberMethod[] methods = new SubscriberMethod[length];
+        for (int i = 0; i < length; i ++) {
+            SubscriberMethodInfo info = methodInfos[i];
+            methods[i] = createSubscriberMethod(info.methodName, info.eventType, info.threadMode,
+                    info.priority, info.sticky, info.conflate, info.invoker);
+        }
+        return methods;
+    }
+}
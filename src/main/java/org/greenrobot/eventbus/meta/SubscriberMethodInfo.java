@@ -0,0 +1,41 @@
+package org.greenrobot.eventbus.meta;
+
+import org.greenrobot.eventbus.SubscriberInvoker;
+import org.greenrobot.eventbus.ThreadMode;
+
+/**
+ * 注解处理器在编译期收集到的订阅函数描述信息.
+ */
+public class SubscriberMethodInfo {
+    final String methodName;
+    final ThreadMode threadMode;
+    final Class<?> eventType;
+    final int priority;
+    final boolean sticky;
+    final boolean conflate;
+
+    /** 生成的直接调用订阅函数的调用器,可以为null. */
+    final SubscriberInvoker invoker;
+
+    public SubscriberMethodInfo(String methodName, Class<?> eventType, ThreadMode threadMode,
+                                int priority, boolean sticky, boolean conflate,
+                                SubscriberInvoker invoker) {
+        this.methodName = methodName;
+        this.threadMode = threadMode;
+        this.eventType = eventType;
+        this.priority = priority;
+        this.sticky = sticky;
+        this.conflate = conflate;
+        this.invoker = invoker;
+    }
+
+    public SubscriberMethodInfo(String methodName, Class<?> eventType, ThreadMode threadMode,
+                                int priority, boolean sticky, SubscriberInvoker invoker) {
+        this(methodName, eventType, threadMode, priority, sticky, false, invoker);
+    }
+
+    public SubscriberMethodInfo(String methodName, Class<?> eventType, ThreadMode threadMode,
+                                int priority, boolean sticky) {
+        this(methodName, eventType, threadMode, priority, sticky, false, null);
+    }
+}
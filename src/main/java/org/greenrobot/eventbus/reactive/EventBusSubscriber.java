@@ -0,0 +1,107 @@
+package org.greenrobot.eventbus.reactive;
+
+import android.util.Log;
+
+import org.greenrobot.eventbus.EventBus;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 将Reactive Streams的Publisher发出的元素post到EventBus的Subscriber.
+ * 订阅时先请求prefetch个元素,之后每post完约四分之三个prefetch再补充请求同样数量,
+ * 因此上游最多只会有prefetch个已请求但尚未post的元素.
+ * 元素在上游发出onNext的线程上post,EventBus的Poster队列有容量限制且策略为BLOCK时,
+ * 队列满会阻塞onNext,从而减缓后续请求.
+ * 一个实例只能订阅一个Publisher.
+ */
+public final class EventBusSubscriber<T> implements Subscriber<T> {
+    private static final Subscription CANCELLED = new Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private final EventBus eventBus;
+    private final int prefetch;
+
+    /** 每post这么多个元素后补充请求. */
+    private final int limit;
+
+    private final AtomicReference<Subscription> upstream = new AtomicReference<>();
+
+    /** 自上次补充请求后post的元素数量,onNext之间不会并发,不需要同步. */
+    private int consumed;
+
+    public EventBusSubscriber(EventBus eventBus) {
+        this(eventBus, 128);
+    }
+
+    public EventBusSubscriber(EventBus eventBus, int prefetch) {
+        if (eventBus == null) {
+            throw new NullPointerException("eventBus must not be null");
+        }
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("Prefetch must be positive: " + prefetch);
+        }
+        this.eventBus = eventBus;
+        this.prefetch = prefetch;
+        limit = prefetch - (prefetch >> 2);
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        if (subscription == null) {
+            throw new NullPointerException("subscription must not be null");
+        }
+        if (!upstream.compareAndSet(null, subscription)) {
+            // 已经订阅了其他Publisher或已经取消.
+            subscription.cancel();
+            return;
+        }
+        subscription.request(prefetch);
+    }
+
+    @Override
+    public void onNext(T element) {
+        if (element == null) {
+            throw new NullPointerException("element must not be null");
+        }
+        try {
+            eventBus.post(element);
+        } catch (RuntimeException e) {
+            // Subscriber不能抛出异常,post失败时(例如队列已满且策略为FAIL)取消上游.
+            Log.e("EventBus", "Could not post " + element.getClass() + ", cancelling upstream", e);
+            cancel();
+            return;
+        }
+        if (++ consumed == limit) {
+            consumed = 0;
+            upstream.get().request(limit);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        upstream.set(CANCELLED);
+        Log.e("EventBus", "Publisher posting to EventBus failed", throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        upstream.set(CANCELLED);
+    }
+
+    /** 取消上游订阅,不再post新的元素. */
+    public void cancel() {
+        Subscription subscription = upstream.getAndSet(CANCELLED);
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.greenrobot.eventbus.reactive;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.EventTap;
+import org.greenrobot.eventbus.OverflowPolicy;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 将EventBus中某一类型的事件作为Reactive Streams的Publisher.
+ * 每个Subscriber有一个有界缓冲区,事件在发布线程上放入缓冲区,只在Subscriber通过request(n)请求时才发出,
+ * 没有需求时缓冲区满后按OverflowPolicy处理:BLOCK阻塞发布线程,DROP_NEWEST及DROP_OLDEST丢弃事件,
+ * FAIL以onError结束该Subscriber.容量为1的DROP_OLDEST缓冲区即只保留最新事件(合并),见latest.
+ * onNext在发布线程或调用request的线程上执行,需要切换线程时由下游处理.
+ * 只有订阅之后post的事件才会发出.
+ */
+public final class EventPublisher<T> implements Publisher<T> {
+    private final EventBus eventBus;
+    final Class<T> eventType;
+    final int capacity;
+    final OverflowPolicy overflowPolicy;
+    private final CopyOnWriteArrayList<EventSubscription<T>> subscriptions = new CopyOnWriteArrayList<>();
+    private final Receiver<T> receiver = new Receiver<>(this);
+
+    /** 是否已经注册到EventBus,有Subscriber时注册,最后一个Subscriber结束时注销. */
+    private boolean registered;
+    private boolean completed;
+
+    /**
+     * 为每个Subscriber缓冲最多capacity个事件.
+     * @param overflowPolicy 缓冲区已满时的处理策略
+     */
+    public static <T> EventPublisher<T> buffered(EventBus eventBus, Class<T> eventType, int capacity,
+                                                 OverflowPolicy overflowPolicy) {
+        return new EventPublisher<>(eventBus, eventType, capacity, overflowPolicy);
+    }
+
+    /** 每个Subscriber只保留最新的一个未发出的事件,适合只关心最新状态的下游. */
+    public static <T> EventPublisher<T> latest(EventBus eventBus, Class<T> eventType) {
+        return new EventPublisher<>(eventBus, eventType, 1, OverflowPolicy.DROP_OLDEST);
+    }
+
+    private EventPublisher(EventBus eventBus, Class<T> eventType, int capacity,
+                           OverflowPolicy overflowPolicy) {
+        if (eventBus == null || eventType == null || overflowPolicy == null) {
+            throw new NullPointerException("eventBus, eventType and overflowPolicy must not be null");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.eventBus = eventBus;
+        this.eventType = eventType;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber must not be null");
+        }
+        EventSubscription<T> subscription = new EventSubscription<>(this, subscriber);
+        subscriber.onSubscribe(subscription);
+        // onSubscribe中可能已经取消.
+        if (subscription.isCancelled()) {
+            return;
+        }
+        synchronized (this) {
+            if (!completed) {
+                subscriptions.add(subscription);
+                if (!registered) {
+                    eventBus.addTap(eventType, receiver);
+                    registered = true;
+                }
+                return;
+            }
+        }
+        subscription.complete();
+    }
+
+    /** 当前的Subscriber数量. */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /** 在所有Subscriber收到已缓冲的事件后发出onComplete,之后的Subscriber立即收到onComplete. */
+    public void complete() {
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+        }
+        for (EventSubscription<T> subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    void remove(EventSubscription<T> subscription) {
+        synchronized (this) {
+            if (subscriptions.remove(subscription) && subscriptions.isEmpty() && registered) {
+                eventBus.removeTap(receiver);
+                registered = false;
+            }
+        }
+    }
+
+    private void onEvent(T event) {
+        for (EventSubscription<T> subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /** 在发布线程上接收EventBus中eventType类型的事件. */
+    static final class Receiver<T> implements EventTap {
+        private final EventPublisher<T> publisher;
+
+        Receiver(EventPublisher<T> publisher) {
+            this.publisher = publisher;
+        }
+
+        @Override
+        public void onEvent(Object event) {
+            publisher.onEvent(publisher.eventType.cast(event));
+        }
+    }
+}
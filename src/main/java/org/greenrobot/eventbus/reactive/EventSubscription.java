@@ -0,0 +1,200 @@
+package org.greenrobot.eventbus.reactive;
+
+import android.util.Log;
+
+import org.greenrobot.eventbus.EventBusException;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * EventPublisher的一个Subscriber的订阅状态,包括有界缓冲区和未满足的需求量.
+ * 发布线程放入事件,下游调用request增加需求,两者都会尝试执行drain,
+ * 通过wip计数保证同一时刻只有一个线程在发出信号,信号之间不会并发.
+ */
+final class EventSubscription<T> implements Subscription {
+    /** BLOCK策略下等待缓冲区空位时检查是否已取消的间隔. */
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final EventPublisher<T> publisher;
+    private final Subscriber<? super T> downstream;
+    private final ArrayBlockingQueue<T> queue;
+
+    /** 未满足的需求量,Long.MAX_VALUE表示不限制. */
+    private final AtomicLong requested = new AtomicLong();
+
+    /** 正在执行或等待执行的drain次数. */
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile boolean cancelled;
+
+    /** 已经完成,缓冲区中的事件发出后发出onComplete或onError. */
+    private volatile boolean done;
+    private volatile Throwable error;
+
+    EventSubscription(EventPublisher<T> publisher, Subscriber<? super T> downstream) {
+        this.publisher = publisher;
+        this.downstream = downstream;
+        queue = new ArrayBlockingQueue<>(publisher.capacity);
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** 在发布线程上放入事件,缓冲区已满时按OverflowPolicy处理. */
+    void offer(T event) {
+        if (cancelled || done) {
+            return;
+        }
+        switch (publisher.overflowPolicy) {
+            case BLOCK:
+                try {
+                    // 分段等待,取消后不再阻塞发布线程.
+                    while (!queue.offer(event, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                        if (cancelled) {
+                            return;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new EventBusException("Interrupted while waiting for subscriber demand", e);
+                }
+                break;
+            case DROP_NEWEST:
+                queue.offer(event);
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(event)) {
+                    queue.poll();
+                }
+                break;
+            case FAIL:
+                if (!queue.offer(event)) {
+                    fail(new EventBusException("Subscriber did not request enough events for "
+                            + publisher.eventType + " (capacity " + publisher.capacity + ")"));
+                    return;
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown overflow policy: " + publisher.overflowPolicy);
+        }
+        drain();
+    }
+
+    void complete() {
+        done = true;
+        drain();
+    }
+
+    private void fail(Throwable throwable) {
+        error = throwable;
+        done = true;
+        drain();
+    }
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            fail(new IllegalArgumentException("Non-positive request: " + n));
+            return;
+        }
+        while (true) {
+            long current = requested.get();
+            if (current == Long.MAX_VALUE) {
+                break;
+            }
+            long next = current + n;
+            if (next < 0) {
+                next = Long.MAX_VALUE;
+            }
+            if (requested.compareAndSet(current, next)) {
+                break;
+            }
+        }
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+        publisher.remove(this);
+        if (wip.getAndIncrement() == 0) {
+            queue.clear();
+        }
+    }
+
+    /** 在需求允许的范围内发出缓冲的事件,完成后发出结束信号. */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        while (true) {
+            long demand = requested.get();
+            long emitted = 0;
+            while (true) {
+                if (cancelled) {
+                    queue.clear();
+                    return;
+                }
+                // 错误不等待缓冲区中的事件发完.
+                Throwable failure = error;
+                if (failure != null) {
+                    terminate(failure);
+                    return;
+                }
+                boolean finished = done;
+                if (emitted == demand) {
+                    if (finished && queue.isEmpty()) {
+                        terminate(null);
+                        return;
+                    }
+                    break;
+                }
+                T event = queue.poll();
+                if (event == null) {
+                    if (finished) {
+                        terminate(null);
+                        return;
+                    }
+                    break;
+                }
+                try {
+                    downstream.onNext(event);
+                } catch (RuntimeException e) {
+                    // Subscriber违反规范抛出异常,取消订阅,不再发出任何信号.
+                    Log.e("EventBus", "Subscriber threw from onNext, cancelling", e);
+                    cancel();
+                    return;
+                }
+                emitted ++;
+            }
+            if (emitted != 0 && demand != Long.MAX_VALUE) {
+                requested.addAndGet(-emitted);
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    private void terminate(Throwable failure) {
+        cancelled = true;
+        queue.clear();
+        publisher.remove(this);
+        if (failure != null) {
+            downstream.onError(failure);
+        } else {
+            downstream.onComplete();
+        }
+    }
+}
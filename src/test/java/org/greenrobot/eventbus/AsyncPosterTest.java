@@ -0,0 +1,84 @@
+package org.greenrobot.eventbus;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncPosterTest {
+
+    /** ASYNC订阅函数等待之后post的另一个ASYNC事件,该事件必须由新的消费任务执行. */
+    @Test
+    public void asyncSubscriberCanWaitForLaterAsyncEvent() throws Exception {
+        EventBus eventBus = EventBus.builder().logNoSubscriberMessages(false).build();
+        WaitingSubscriber subscriber = new WaitingSubscriber();
+        eventBus.register(subscriber);
+
+        eventBus.post(new FirstEvent());
+        assertTrue(subscriber.firstStarted.await(3, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        eventBus.post(new SecondEvent());
+
+        assertTrue(subscriber.firstDone.await(3, TimeUnit.SECONDS));
+        assertTrue(subscriber.sawSecond);
+    }
+
+    /** 达到上限时事件排队等待,最终都会被执行. */
+    @Test
+    public void cappedWorkersDeliverAllEvents() throws Exception {
+        EventBus eventBus = EventBus.builder().logNoSubscriberMessages(false).maxAsyncWorkers(2).build();
+        CountingSubscriber subscriber = new CountingSubscriber(1000);
+        eventBus.register(subscriber);
+
+        for (int i = 0; i < 1000; i ++) {
+            eventBus.post(new FirstEvent());
+        }
+
+        assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+        assertEquals(1000, subscriber.count.get());
+    }
+
+    static final class FirstEvent {
+    }
+
+    static final class SecondEvent {
+    }
+
+    public static final class WaitingSubscriber {
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch secondReceived = new CountDownLatch(1);
+        final CountDownLatch firstDone = new CountDownLatch(1);
+        volatile boolean sawSecond;
+
+        @Subscribe(threadMode = ThreadMode.ASYNC)
+        public void onFirst(FirstEvent event) throws InterruptedException {
+            firstStarted.countDown();
+            sawSecond = secondReceived.await(3, TimeUnit.SECONDS);
+            firstDone.countDown();
+        }
+
+        @Subscribe(threadMode = ThreadMode.ASYNC)
+        public void onSecond(SecondEvent event) {
+            secondReceived.countDown();
+        }
+    }
+
+    public static final class CountingSubscriber {
+        final AtomicInteger count = new AtomicInteger();
+        final CountDownLatch done;
+
+        CountingSubscriber(int expected) {
+            done = new CountDownLatch(expected);
+        }
+
+        @Subscribe(threadMode = ThreadMode.ASYNC)
+        public void onEvent(FirstEvent event) {
+            count.incrementAndGet();
+            done.countDown();
+        }
+    }
+}